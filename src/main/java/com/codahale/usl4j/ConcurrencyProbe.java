@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A probe which measures the concurrency and throughput of the tasks it instruments.
+ *
+ * <p>Rather than sampling the number of tasks in flight, which misses short bursts, the probe
+ * tracks the integral of the number of tasks in flight over time. At any time {@code t}, that
+ * integral is {@code Σend - Σstart + inflight·t}, where the sums are of the start times of all
+ * started tasks and the end times of all finished tasks. Each {@link #sample()} then divides the
+ * change in the integral by the elapsed time to get the mean concurrency over the interval, and the
+ * number of finished tasks by the elapsed time to get the throughput.
+ *
+ * <p>Each thread keeps its own counters, which only it writes, so instrumenting a task costs two
+ * calls to {@link System#nanoTime()}, a thread-local lookup, and a few uncontended stores, and
+ * allocates nothing once the thread has run its first task. Each thread's counters are guarded by
+ * a sequence number, so a sample never sees a count without its sum or vice versa. A task may end
+ * on a different thread than it started on, and the counters of threads which have exited are
+ * folded into a common total on the next sample.
+ *
+ * <p>Instances are thread-safe, although samples should be taken from a single thread.
+ */
+public final class ConcurrencyProbe {
+
+  private final long origin = System.nanoTime();
+  private final ConcurrentLinkedQueue<Cell> cells = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Cell> cell =
+      ThreadLocal.withInitial(
+          () -> {
+            final Cell c = new Cell(Thread.currentThread());
+            cells.add(c);
+            return c;
+          });
+  // the counters of exited threads, guarded by this
+  private long retiredIntegral;
+  private long retiredEnds;
+  private long retiredInFlight;
+  private long lastTime;
+  private long lastIntegral;
+  private long lastEnds;
+
+  /** Records the start of a task. Each call must be followed by a call to {@link #end()}. */
+  public void start() {
+    final long t = System.nanoTime() - origin;
+    final Cell c = cell.get();
+    c.beginWrite();
+    Cell.START_SUM.lazySet(c, c.startSum + t);
+    Cell.STARTS.lazySet(c, c.starts + 1);
+    c.endWrite();
+  }
+
+  /** Records the end of a task, which may have started on another thread. */
+  public void end() {
+    final long t = System.nanoTime() - origin;
+    final Cell c = cell.get();
+    c.beginWrite();
+    Cell.END_SUM.lazySet(c, c.endSum + t);
+    Cell.ENDS.lazySet(c, c.ends + 1);
+    c.endWrite();
+  }
+
+  /**
+   * Returns a runnable which records the start and end of each run of the given runnable.
+   *
+   * @param runnable the runnable to instrument
+   * @return an instrumented {@link Runnable}
+   */
+  public Runnable wrap(Runnable runnable) {
+    Objects.requireNonNull(runnable);
+    return () -> {
+      start();
+      try {
+        runnable.run();
+      } finally {
+        end();
+      }
+    };
+  }
+
+  /**
+   * Returns a callable which records the start and end of each call of the given callable.
+   *
+   * @param callable the callable to instrument
+   * @param <T> the type of the callable's result
+   * @return an instrumented {@link Callable}
+   */
+  public <T> Callable<T> wrap(Callable<T> callable) {
+    Objects.requireNonNull(callable);
+    return () -> {
+      start();
+      try {
+        return callable.call();
+      } finally {
+        end();
+      }
+    };
+  }
+
+  /**
+   * Returns an executor service which records the start and end of each task it runs, but not the
+   * time tasks spend queued.
+   *
+   * <p>Each submitted task is wrapped in a small object, in addition to whatever the executor
+   * itself allocates.
+   *
+   * @param executor the executor to instrument
+   * @return an instrumented {@link ExecutorService}
+   */
+  public ExecutorService wrap(ExecutorService executor) {
+    Objects.requireNonNull(executor);
+    return new AbstractExecutorService() {
+      @Override
+      public void execute(Runnable command) {
+        executor.execute(wrap(command));
+      }
+
+      @Override
+      public void shutdown() {
+        executor.shutdown();
+      }
+
+      @Override
+      public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+      }
+
+      @Override
+      public boolean isShutdown() {
+        return executor.isShutdown();
+      }
+
+      @Override
+      public boolean isTerminated() {
+        return executor.isTerminated();
+      }
+
+      @Override
+      public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+      }
+    };
+  }
+
+  /**
+   * The number of tasks currently in flight.
+   *
+   * @return the number of tasks which have started but not finished
+   */
+  public synchronized long inFlight() {
+    long n = retiredInFlight;
+    for (Cell c : cells) {
+      c.read();
+      n += c.readStarts - c.readEnds;
+    }
+    return n;
+  }
+
+  /**
+   * Measures the mean concurrency and the throughput, in tasks per second, since the previous
+   * sample (or since the probe was created).
+   *
+   * @return a {@link Measurement} for the interval, or empty if no tasks finished during it
+   */
+  public synchronized Optional<Measurement> sample() {
+    long e = retiredEnds;
+    long sums = retiredIntegral;
+    long n = retiredInFlight;
+    for (Iterator<Cell> i = cells.iterator(); i.hasNext(); ) {
+      final Cell c = i.next();
+      // an exited thread's counters can't change, so once read they can be retired
+      final Thread owner = c.owner.get();
+      final boolean exited = owner == null || !owner.isAlive();
+      c.read();
+      sums += c.readArea;
+      n += c.readStarts - c.readEnds;
+      e += c.readEnds;
+      if (exited) {
+        this.retiredIntegral += c.readArea;
+        this.retiredEnds += c.readEnds;
+        this.retiredInFlight += c.readStarts - c.readEnds;
+        i.remove();
+      }
+    }
+    // every time read above was recorded before now, so no task counts for more than it has run
+    final long now = System.nanoTime() - origin;
+    final long integral = sums + (n * now);
+
+    final long elapsed = now - lastTime;
+    final long finished = e - lastEnds;
+    final long area = Math.max(0, integral - lastIntegral);
+    this.lastTime = now;
+    this.lastEnds = e;
+    this.lastIntegral = integral;
+
+    if (finished <= 0 || elapsed <= 0) {
+      return Optional.empty();
+    }
+    final double seconds = elapsed / 1e9;
+    return Optional.of(
+        Measurement.ofConcurrency().andThroughput((double) area / elapsed, finished / seconds));
+  }
+
+  /**
+   * Samples the probe on a schedule, passing each measurement to the given consumer.
+   *
+   * @param executor the executor on which to take the samples
+   * @param interval the interval between samples
+   * @param consumer the consumer of the measurements, e.g. {@link RollingModel#add(Measurement)}
+   * @return a {@link ScheduledFuture} which can be used to cancel the sampling
+   */
+  public ScheduledFuture<?> schedule(
+      ScheduledExecutorService executor, Duration interval, Consumer<Measurement> consumer) {
+    Objects.requireNonNull(executor);
+    Objects.requireNonNull(consumer);
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+    final long nanos = FitOptions.saturatedNanos(interval);
+    return executor.scheduleAtFixedRate(
+        () -> sample().ifPresent(consumer), nanos, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  // one thread's counters; only that thread writes them, so they need no atomic updates, but each
+  // write is bracketed by increments of the version, which is odd while the counters are changing.
+  // The writes are ordered stores, which cost no more than plain ones on most hardware, and each
+  // orders the stores before it, so the odd version is visible before the counters change, and
+  // the counters before the version is even again.
+  private static final class Cell {
+    private static final AtomicLongFieldUpdater<Cell> VERSION =
+        AtomicLongFieldUpdater.newUpdater(Cell.class, "version");
+    private static final AtomicLongFieldUpdater<Cell> STARTS =
+        AtomicLongFieldUpdater.newUpdater(Cell.class, "starts");
+    private static final AtomicLongFieldUpdater<Cell> START_SUM =
+        AtomicLongFieldUpdater.newUpdater(Cell.class, "startSum");
+    private static final AtomicLongFieldUpdater<Cell> ENDS =
+        AtomicLongFieldUpdater.newUpdater(Cell.class, "ends");
+    private static final AtomicLongFieldUpdater<Cell> END_SUM =
+        AtomicLongFieldUpdater.newUpdater(Cell.class, "endSum");
+
+    private final WeakReference<Thread> owner;
+    private volatile long version;
+    private volatile long starts;
+    private volatile long startSum;
+    private volatile long ends;
+    private volatile long endSum;
+    // the last consistent reading of the counters, guarded by the probe
+    private long readStarts;
+    private long readEnds;
+    private long readArea;
+
+    private Cell(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+    }
+
+    private void beginWrite() {
+      VERSION.lazySet(this, version + 1);
+    }
+
+    private void endWrite() {
+      VERSION.lazySet(this, version + 1);
+    }
+
+    private void read() {
+      while (true) {
+        final long v = version;
+        if ((v & 1) == 0) {
+          final long s = starts;
+          final long e = ends;
+          final long area = endSum - startSum;
+          if (version == v) {
+            this.readStarts = s;
+            this.readEnds = e;
+            this.readArea = area;
+            return;
+          }
+        }
+        Thread.yield();
+      }
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.sqrt;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A planner which picks the concurrency level at which to take the next measurement so as to learn
+ * the most about a system, and says when enough is known to stop.
+ *
+ * <p>Given the measurements so far, the planner fits a {@link Model}. Adding a measurement at
+ * concurrency {@code N} multiplies the determinant of {@code JᵀJ} by {@code 1 +
+ * j(N)ᵀ(JᵀJ)⁻¹j(N)}, where {@code j(N)} is the gradient of the model's throughput at {@code N}, so
+ * the level which maximizes that quadratic form shrinks the joint confidence region of σ, κ, and λ
+ * the most. This is sequential D-optimal design.
+ *
+ * <p>The standard error of {@code N}<sub>max</sub> {@code = √((1-σ)/κ)} is estimated from the
+ * parameters' covariance by the delta method. Because the noise in load test measurements usually
+ * grows with throughput, the covariance is a heteroscedasticity-consistent (HC3) sandwich estimate
+ * rather than {@code s²(JᵀJ)⁻¹}, which would badly understate the uncertainty of {@code
+ * N}<sub>max</sub>. The plan is complete once there are at least twelve measurements and the 95%
+ * confidence interval of {@code N}<sub>max</sub> is within the given relative tolerance.
+ *
+ * <p>A model with no coherency costs ({@code κ ≤ 0}) has no peak, and one with small coherency
+ * costs may have a peak far beyond the levels being tested, where its position is all but
+ * unknowable. So the plan is also complete once there are at least twelve measurements and the
+ * upper end of the 95% confidence interval of {@code κ} is too small to put a peak at or below the
+ * highest level.
+ *
+ * <p>A typical load test measures the system at {@link #initialLevels()}, and then at each plan's
+ * {@link Plan#nextConcurrency()} until {@link Plan#isComplete()}.
+ */
+public final class ExperimentPlanner {
+
+  // the z-score of a two-sided 95% confidence interval
+  private static final double Z = 1.96;
+
+  // the fewest measurements from which the sandwich estimate is trusted to stop; with fewer, a few
+  // small residuals can make it wildly optimistic
+  private static final int MIN_TO_STOP = 12;
+
+  private final int minConcurrency;
+  private final int maxConcurrency;
+  private final double tolerance;
+  private final FitOptions options;
+
+  /**
+   * Creates a planner with the default fit options.
+   *
+   * @param minConcurrency the lowest concurrency level to test
+   * @param maxConcurrency the highest concurrency level to test
+   * @param tolerance the relative half-width of the 95% confidence interval of {@code
+   *     N}<sub>max</sub> at which to stop, e.g. {@code 0.1} for ±10%
+   */
+  public ExperimentPlanner(int minConcurrency, int maxConcurrency, double tolerance) {
+    this(minConcurrency, maxConcurrency, tolerance, FitOptions.defaults());
+  }
+
+  /**
+   * Creates a planner.
+   *
+   * @param minConcurrency the lowest concurrency level to test
+   * @param maxConcurrency the highest concurrency level to test
+   * @param tolerance the relative half-width of the 95% confidence interval of {@code
+   *     N}<sub>max</sub> at which to stop, e.g. {@code 0.1} for ±10%
+   * @param options the iteration budget, tolerances, and deadline for each fit
+   */
+  public ExperimentPlanner(
+      int minConcurrency, int maxConcurrency, double tolerance, FitOptions options) {
+    if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+      throw new IllegalArgumentException(
+          "Concurrency levels must be positive and minConcurrency <= maxConcurrency");
+    }
+    if (!(tolerance > 0)) {
+      throw new IllegalArgumentException("tolerance must be positive");
+    }
+    this.minConcurrency = minConcurrency;
+    this.maxConcurrency = maxConcurrency;
+    this.tolerance = tolerance;
+    this.options = Objects.requireNonNull(options);
+  }
+
+  /**
+   * The concurrency levels at which to take the first measurements, before there's a model to plan
+   * from: six levels, spaced geometrically from the lowest level to the highest.
+   *
+   * @return an array of concurrency levels, in increasing order
+   */
+  public int[] initialLevels() {
+    final int[] levels = new int[Model.MIN_MEASUREMENTS];
+    final double ratio = (double) maxConcurrency / minConcurrency;
+    for (int i = 0; i < levels.length; i++) {
+      final double n = minConcurrency * Math.pow(ratio, i / (levels.length - 1.0));
+      levels[i] = (int) Math.round(n);
+    }
+    return levels;
+  }
+
+  /**
+   * Fits a model to the given measurements and plans the next one.
+   *
+   * @param measurements the measurements so far
+   * @return a {@link Plan}
+   * @throws IllegalArgumentException if there are fewer than six measurements, or if no model can
+   *     be fit to them
+   */
+  public Plan plan(List<Measurement> measurements) {
+    final double[] concurrency = new double[measurements.size()];
+    final double[] throughput = new double[measurements.size()];
+    int i = 0;
+    for (Measurement m : measurements) {
+      concurrency[i] = m.concurrency();
+      throughput[i] = m.throughput();
+      i++;
+    }
+    return plan(concurrency, throughput);
+  }
+
+  /**
+   * Fits a model to the given measurements and plans the next one.
+   *
+   * @param concurrency the concurrency of each measurement
+   * @param throughput the throughput of each measurement
+   * @return a {@link Plan}
+   * @throws IllegalArgumentException if there are fewer than six measurements, or if no model can
+   *     be fit to them
+   */
+  public Plan plan(double[] concurrency, double[] throughput) {
+    if (concurrency.length != throughput.length) {
+      throw new IllegalArgumentException("Needs the same number of concurrency/throughput values");
+    }
+    if (concurrency.length < Model.MIN_MEASUREMENTS) {
+      throw new IllegalArgumentException("Needs at least 6 measurements");
+    }
+
+    final ModelFitter fitter = new ModelFitter(options);
+    final Model model = fitter.fit(concurrency, throughput);
+
+    // without a converged fit and a usable covariance, there's nothing to design from, so fall
+    // back to the level furthest from any measurement
+    final double[] c = new double[9];
+    if (!fitter.isConverged() || !fitter.inverseHessian(c)) {
+      return new Plan(model, furthest(concurrency), Double.NaN, false);
+    }
+
+    final int next = mostInformative(model, c);
+    final double[] cov = sandwich(model, concurrency, throughput, c);
+    final double sigma = model.sigma();
+    final double kappa = model.kappa();
+    final boolean enough = concurrency.length >= MIN_TO_STOP;
+
+    // whether κ is known to be too small for there to be a peak within the levels being tested
+    final double limit = (1 - sigma) / ((double) maxConcurrency * maxConcurrency);
+    final boolean beyond = kappa + (Z * sqrt(cov[4])) <= limit;
+
+    // as with Model#concurrencyLimit, a model with no coherency costs has no peak, and so N_max has
+    // no standard error
+    if (!(kappa > 0)) {
+      return new Plan(model, next, Double.NaN, enough && beyond);
+    }
+
+    // the delta method: Var(g) ≈ ∇gᵀ Σ ∇g, with ∂g/∂σ = -g/(2(1-σ)) and ∂g/∂κ = -g/(2κ)
+    final double nmax = sqrt((1 - sigma) / kappa);
+    final double ds = -nmax / (2 * (1 - sigma));
+    final double dk = -nmax / (2 * kappa);
+    final double error = sqrt((ds * ds * cov[0]) + (2 * ds * dk * cov[1]) + (dk * dk * cov[4]));
+    final boolean complete = enough && (Z * error <= tolerance * nmax || beyond);
+    return new Plan(model, next, error, complete);
+  }
+
+  // the HC3 estimate of the parameters' covariance, (JᵀJ)⁻¹ JᵀΩJ (JᵀJ)⁻¹, where Ω is diagonal
+  // with each squared residual inflated by its leverage, 1/(1-h)²
+  private static double[] sandwich(
+      Model model, double[] concurrency, double[] throughput, double[] inverse) {
+    final double sigma = model.sigma();
+    final double kappa = model.kappa();
+    final double lambda = model.lambda();
+    final double[] meat = new double[9];
+    final double[] j = new double[3];
+    for (int i = 0; i < concurrency.length; i++) {
+      final double n = concurrency[i];
+      final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+      final double r = throughput[i] - (lambda * n) / d;
+      j[0] = (lambda * n * (n - 1)) / (d * d);
+      j[1] = j[0] * n;
+      j[2] = -n / d;
+      final double h = quadratic(inverse, j);
+      final double w = r * r / ((1 - h) * (1 - h));
+      for (int a = 0; a < 3; a++) {
+        for (int b = 0; b < 3; b++) {
+          meat[a * 3 + b] += w * j[a] * j[b];
+        }
+      }
+    }
+
+    final double[] half = new double[9];
+    final double[] cov = new double[9];
+    multiply(inverse, meat, half);
+    multiply(half, inverse, cov);
+    return cov;
+  }
+
+  // xᵀAx for a 3x3 matrix A
+  private static double quadratic(double[] a, double[] x) {
+    double q = 0;
+    for (int i = 0; i < 3; i++) {
+      q += x[i] * ((a[i * 3] * x[0]) + (a[i * 3 + 1] * x[1]) + (a[i * 3 + 2] * x[2]));
+    }
+    return q;
+  }
+
+  // out = ab for 3x3 matrices
+  private static void multiply(double[] a, double[] b, double[] out) {
+    for (int i = 0; i < 3; i++) {
+      for (int k = 0; k < 3; k++) {
+        out[i * 3 + k] =
+            (a[i * 3] * b[k]) + (a[i * 3 + 1] * b[3 + k]) + (a[i * 3 + 2] * b[6 + k]);
+      }
+    }
+  }
+
+  // the candidate level with the largest j(N)ᵀ(JᵀJ)⁻¹j(N)
+  private int mostInformative(Model model, double[] c) {
+    final double sigma = model.sigma();
+    final double kappa = model.kappa();
+    final double lambda = model.lambda();
+    final double[] j = new double[3];
+    int best = minConcurrency;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int n = minConcurrency; n <= maxConcurrency; n++) {
+      final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+      j[0] = (lambda * n * (n - 1)) / (d * d);
+      j[1] = j[0] * n;
+      j[2] = -n / d;
+      final double score = quadratic(c, j);
+      if (score > bestScore) {
+        best = n;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  // the candidate level with the greatest distance to the nearest measurement
+  private int furthest(double[] concurrency) {
+    int best = minConcurrency;
+    double bestDistance = -1;
+    for (int n = minConcurrency; n <= maxConcurrency; n++) {
+      double distance = Double.POSITIVE_INFINITY;
+      for (double m : concurrency) {
+        distance = Math.min(distance, Math.abs(m - n));
+      }
+      if (distance > bestDistance) {
+        best = n;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  /** The result of planning: the current model, the next level to test, and whether to stop. */
+  public static final class Plan {
+    private final Model model;
+    private final int nextConcurrency;
+    private final double maxConcurrencyStandardError;
+    private final boolean complete;
+
+    private Plan(
+        Model model, int nextConcurrency, double maxConcurrencyStandardError, boolean complete) {
+      this.model = model;
+      this.nextConcurrency = nextConcurrency;
+      this.maxConcurrencyStandardError = maxConcurrencyStandardError;
+      this.complete = complete;
+    }
+
+    /**
+     * The model fit to the measurements so far, which may be a poor one if the fit didn't
+     * converge, in which case {@link #maxConcurrencyStandardError()} is {@code NaN}.
+     *
+     * @return a {@link Model} instance
+     */
+    public Model model() {
+      return model;
+    }
+
+    /**
+     * The concurrency level at which a measurement would most reduce the uncertainty of the
+     * model's parameters, or, if there's no usable model, the level furthest from any measurement.
+     *
+     * @return the next concurrency level to test
+     */
+    public int nextConcurrency() {
+      return nextConcurrency;
+    }
+
+    /**
+     * The estimated standard error of {@code N}<sub>max</sub>.
+     *
+     * @return the standard error of {@code N}<sub>max</sub>, or {@code NaN} if it can't be
+     *     estimated, e.g. because the model has no peak
+     */
+    public double maxConcurrencyStandardError() {
+      return maxConcurrencyStandardError;
+    }
+
+    /**
+     * Whether or not {@code N}<sub>max</sub> is known to within the planner's tolerance, so that
+     * no more measurements are needed.
+     *
+     * @return {@code true} if the 95% confidence interval of {@code N}<sub>max</sub> is within the
+     *     tolerance, or if the model has no peak and {@code κ} is known to be too small for one to
+     *     be within the levels being tested
+     */
+    public boolean isComplete() {
+      return complete;
+    }
+  }
+}
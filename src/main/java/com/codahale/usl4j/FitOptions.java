@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+/**
+ * Options which control how much work fitting a {@link Model} may do.
+ *
+ * <p>A fit stops when it converges, when it has run the maximum number of iterations, or when its
+ * deadline has passed, whichever comes first. A fit which stops without converging still produces
+ * the best model it found, but flags it as unconverged.
+ */
+public final class FitOptions {
+
+  private static final FitOptions DEFAULTS = new FitOptions(5_000, 1e-14, 1e-12, null, false);
+
+  private final int maxIterations;
+  private final double functionTolerance;
+  private final double gradientTolerance;
+  private final Duration deadline;
+  private final boolean variableProjection;
+
+  private FitOptions(
+      int maxIterations,
+      double functionTolerance,
+      double gradientTolerance,
+      Duration deadline,
+      boolean variableProjection) {
+    this.maxIterations = maxIterations;
+    this.functionTolerance = functionTolerance;
+    this.gradientTolerance = gradientTolerance;
+    this.deadline = deadline;
+    this.variableProjection = variableProjection;
+  }
+
+  /**
+   * Returns the default options: 5,000 iterations, a function tolerance of {@code 1e-14}, a
+   * gradient tolerance of {@code 1e-12}, no deadline, and no variable projection.
+   *
+   * <p>These are the options {@link Model#build(java.util.List)} uses. The function tolerance is
+   * tighter than the {@code 1e-12} of earlier versions, which stopped up to {@code 1e-5} short of
+   * the optimum on the USL's flat cost surface; the tighter tolerance costs about one more
+   * iteration.
+   *
+   * @return the default options
+   */
+  public static FitOptions defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * Returns a copy of these options with a different maximum number of iterations.
+   *
+   * @param maxIterations the maximum number of iterations a fit may run
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withMaxIterations(int maxIterations) {
+    if (maxIterations < 0) {
+      throw new IllegalArgumentException("maxIterations must not be negative");
+    }
+    return new FitOptions(
+        maxIterations, functionTolerance, gradientTolerance, deadline, variableProjection);
+  }
+
+  /**
+   * Returns a copy of these options with a different function tolerance.
+   *
+   * @param functionTolerance the relative reduction in the residual sum of squares below which a
+   *     fit has converged
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withFunctionTolerance(double functionTolerance) {
+    return new FitOptions(
+        maxIterations,
+        checkTolerance(functionTolerance),
+        gradientTolerance,
+        deadline,
+        variableProjection);
+  }
+
+  /**
+   * Returns a copy of these options with a different gradient tolerance.
+   *
+   * @param gradientTolerance the absolute size of the gradient below which a fit has converged
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withGradientTolerance(double gradientTolerance) {
+    return new FitOptions(
+        maxIterations,
+        functionTolerance,
+        checkTolerance(gradientTolerance),
+        deadline,
+        variableProjection);
+  }
+
+  /**
+   * Returns a copy of these options with a deadline.
+   *
+   * @param deadline the maximum wall-clock time a fit may take
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withDeadline(Duration deadline) {
+    if (deadline.isNegative() || deadline.isZero()) {
+      throw new IllegalArgumentException("deadline must be positive");
+    }
+    return new FitOptions(
+        maxIterations, functionTolerance, gradientTolerance, deadline, variableProjection);
+  }
+
+  /**
+   * Returns a copy of these options without a deadline.
+   *
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withoutDeadline() {
+    return new FitOptions(
+        maxIterations, functionTolerance, gradientTolerance, null, variableProjection);
+  }
+
+  /**
+   * Returns a copy of these options which does or doesn't use variable projection.
+   *
+   * <p>For fixed σ and κ, the best λ has a closed form, so with variable projection the solver
+   * searches only over σ and κ, solving for λ exactly at each step. The smaller search space
+   * usually takes fewer iterations, although each iteration makes an extra pass over the
+   * measurements.
+   *
+   * @param variableProjection whether or not to eliminate λ from the search
+   * @return a {@link FitOptions} instance
+   */
+  public FitOptions withVariableProjection(boolean variableProjection) {
+    return new FitOptions(
+        maxIterations, functionTolerance, gradientTolerance, deadline, variableProjection);
+  }
+
+  /**
+   * The maximum number of iterations a fit may run.
+   *
+   * @return the maximum number of iterations
+   */
+  public int maxIterations() {
+    return maxIterations;
+  }
+
+  /**
+   * The relative reduction in the residual sum of squares below which a fit has converged.
+   *
+   * @return the function tolerance
+   */
+  public double functionTolerance() {
+    return functionTolerance;
+  }
+
+  /**
+   * The absolute size of the gradient below which a fit has converged.
+   *
+   * @return the gradient tolerance
+   */
+  public double gradientTolerance() {
+    return gradientTolerance;
+  }
+
+  /**
+   * The maximum wall-clock time a fit may take, if any.
+   *
+   * @return the deadline, if any
+   */
+  public Optional<Duration> deadline() {
+    return Optional.ofNullable(deadline);
+  }
+
+  /**
+   * Whether or not fits eliminate λ from the search by variable projection.
+   *
+   * @return whether or not to use variable projection
+   */
+  public boolean variableProjection() {
+    return variableProjection;
+  }
+
+  long deadlineNanos() {
+    return deadline == null ? Long.MAX_VALUE : saturatedNanos(deadline);
+  }
+
+  // converts a duration to nanoseconds, saturating instead of overflowing
+  static long saturatedNanos(Duration duration) {
+    try {
+      return duration.toNanos();
+    } catch (ArithmeticException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  private static double checkTolerance(double tolerance) {
+    if (!(tolerance >= 0)) {
+      throw new IllegalArgumentException("tolerance must not be negative");
+    }
+    return tolerance;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FitOptions)) {
+      return false;
+    }
+    final FitOptions that = (FitOptions) o;
+    return maxIterations == that.maxIterations
+        && Double.compare(that.functionTolerance, functionTolerance) == 0
+        && Double.compare(that.gradientTolerance, gradientTolerance) == 0
+        && Objects.equals(deadline, that.deadline)
+        && variableProjection == that.variableProjection;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        maxIterations, functionTolerance, gradientTolerance, deadline, variableProjection);
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", FitOptions.class.getSimpleName() + "[", "]")
+        .add("maxIterations=" + maxIterations)
+        .add("functionTolerance=" + functionTolerance)
+        .add("gradientTolerance=" + gradientTolerance)
+        .add("deadline=" + deadline)
+        .add("variableProjection=" + variableProjection)
+        .toString();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.sqrt;
+
+import java.util.StringJoiner;
+
+/** The result of fitting a {@link Model}, along with diagnostics about the fit. */
+public final class FitResult {
+
+  private final Model model;
+  private final boolean converged;
+  private final int iterations;
+  private final int evaluations;
+  private final double residualSumOfSquares;
+  private final double totalSumOfSquares;
+  private final double sigmaError;
+  private final double kappaError;
+  private final double lambdaError;
+  private final long elapsedNanos;
+
+  FitResult(
+      Model model,
+      boolean converged,
+      int iterations,
+      int evaluations,
+      double residualSumOfSquares,
+      double totalSumOfSquares,
+      double sigmaError,
+      double kappaError,
+      double lambdaError,
+      long elapsedNanos) {
+    this.model = model;
+    this.converged = converged;
+    this.iterations = iterations;
+    this.evaluations = evaluations;
+    this.residualSumOfSquares = residualSumOfSquares;
+    this.totalSumOfSquares = totalSumOfSquares;
+    this.sigmaError = sigmaError;
+    this.kappaError = kappaError;
+    this.lambdaError = lambdaError;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  // estimates the standard errors from s²(JᵀJ)⁻¹, using covariance as scratch space
+  static FitResult of(
+      Model model,
+      boolean converged,
+      LevenbergMarquardt lm,
+      int measurements,
+      double totalSumOfSquares,
+      long elapsedNanos,
+      double[] covariance) {
+    final double sse = lm.cost();
+    double sigmaError = Double.NaN;
+    double kappaError = Double.NaN;
+    double lambdaError = Double.NaN;
+    if (lm.inverseHessian(3, covariance)) {
+      final double variance = sse / (measurements - 3);
+      sigmaError = sqrt(variance * covariance[0]);
+      kappaError = sqrt(variance * covariance[4]);
+      lambdaError = sqrt(variance * covariance[8]);
+    }
+    return new FitResult(
+        model,
+        converged,
+        lm.iterations(),
+        lm.evaluations(),
+        sse,
+        totalSumOfSquares,
+        sigmaError,
+        kappaError,
+        lambdaError,
+        elapsedNanos);
+  }
+
+  /**
+   * The fitted model. If the fit didn't converge, this is the best model found before the fit ran
+   * out of iterations or time.
+   *
+   * @return a {@link Model} instance
+   */
+  public Model model() {
+    return model;
+  }
+
+  /**
+   * Whether or not the fit converged.
+   *
+   * @return {@code true} if the fit converged, {@code false} if it ran out of iterations or time
+   */
+  public boolean isConverged() {
+    return converged;
+  }
+
+  /**
+   * The number of iterations the solver ran.
+   *
+   * @return the number of iterations
+   */
+  public int iterations() {
+    return iterations;
+  }
+
+  /**
+   * The number of times the solver evaluated the residuals and their Jacobian. Each evaluation is
+   * a single pass over the measurements which calculates both.
+   *
+   * @return the number of evaluations
+   */
+  public int evaluations() {
+    return evaluations;
+  }
+
+  /**
+   * The sum of the squared residuals of the fitted model.
+   *
+   * @return {@code SSE}
+   */
+  public double residualSumOfSquares() {
+    return residualSumOfSquares;
+  }
+
+  /**
+   * The coefficient of determination of the fitted model.
+   *
+   * @return {@code R²}
+   */
+  public double rSquared() {
+    return 1 - (residualSumOfSquares / totalSumOfSquares);
+  }
+
+  /**
+   * The standard error of the fitted model's coefficient of contention.
+   *
+   * @return the standard error of {@code σ}, or {@code NaN} if it couldn't be estimated
+   */
+  public double sigmaStandardError() {
+    return sigmaError;
+  }
+
+  /**
+   * The standard error of the fitted model's coefficient of crosstalk/coherency.
+   *
+   * @return the standard error of {@code κ}, or {@code NaN} if it couldn't be estimated
+   */
+  public double kappaStandardError() {
+    return kappaError;
+  }
+
+  /**
+   * The standard error of the fitted model's coefficient of performance.
+   *
+   * @return the standard error of {@code λ}, or {@code NaN} if it couldn't be estimated
+   */
+  public double lambdaStandardError() {
+    return lambdaError;
+  }
+
+  /**
+   * The wall-clock time the fit took, in nanoseconds.
+   *
+   * @return the elapsed time of the fit
+   */
+  public long elapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", FitResult.class.getSimpleName() + "[", "]")
+        .add("model=" + model)
+        .add("converged=" + converged)
+        .add("iterations=" + iterations)
+        .add("evaluations=" + evaluations)
+        .add("residualSumOfSquares=" + residualSumOfSquares)
+        .add("rSquared=" + rSquared())
+        .add("sigmaStandardError=" + sigmaError)
+        .add("kappaStandardError=" + kappaError)
+        .add("lambdaStandardError=" + lambdaError)
+        .add("elapsedNanos=" + elapsedNanos)
+        .toString();
+  }
+}
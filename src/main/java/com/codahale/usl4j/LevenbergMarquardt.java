@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
+
+/**
+ * A Levenberg-Marquardt solver for least-squares problems with no more than three parameters.
+ *
+ * <p>Each iteration solves the damped normal equations {@code (JᵀJ + μ·diag(JᵀJ))δ = -Jᵀr} by
+ * Cholesky decomposition. Because the system is at most 3x3, problems only ever have to supply
+ * {@code JᵀJ} and {@code Jᵀr}, which they can accumulate in a single pass over their data without
+ * materializing the Jacobian. All working state is kept in arrays allocated up front, so an
+ * instance can be reused for any number of fits without allocating. Instances are not thread-safe.
+ */
+final class LevenbergMarquardt {
+
+  /** A least-squares problem. */
+  interface Problem {
+
+    /**
+     * The number of parameters the problem has.
+     *
+     * @return the number of parameters, no more than {@link #MAX_PARAMETERS}
+     */
+    int parameters();
+
+    /**
+     * Evaluates the residuals of the problem at a set of parameters.
+     *
+     * @param params the parameters
+     * @param gradient an array which will be filled with {@code Jᵀr}
+     * @param hessian an array which will be filled with {@code JᵀJ}, in row-major order
+     * @return the sum of the squared residuals
+     */
+    double evaluate(double[] params, double[] gradient, double[] hessian);
+  }
+
+  /** A check for whether a solution is worth pursuing any further. */
+  interface Cutoff {
+
+    /**
+     * Tests whether the solver should give up on its current solution.
+     *
+     * @param iterations the number of iterations run so far
+     * @param cost the sum of the squared residuals of the current solution
+     * @return {@code true} if the solver should stop without converging
+     */
+    boolean test(int iterations, double cost);
+  }
+
+  static final int MAX_PARAMETERS = 3;
+
+  // the relative step size below which no further progress is possible in double precision
+  private static final double MIN_STEP = 1e-15;
+  private static final double MIN_DIAGONAL = 1e-300;
+  private static final double INITIAL_DAMPING = 1e-3;
+
+  private final double[] params = new double[MAX_PARAMETERS];
+  private final double[] candidate = new double[MAX_PARAMETERS];
+  private final double[] step = new double[MAX_PARAMETERS];
+  private final double[] system = new double[MAX_PARAMETERS * MAX_PARAMETERS];
+  private double[] gradient = new double[MAX_PARAMETERS];
+  private double[] hessian = new double[MAX_PARAMETERS * MAX_PARAMETERS];
+  private double[] candidateGradient = new double[MAX_PARAMETERS];
+  private double[] candidateHessian = new double[MAX_PARAMETERS * MAX_PARAMETERS];
+  private double cost;
+  private int iterations;
+  private int evaluations;
+
+  /**
+   * Minimizes the sum of the squared residuals of a problem.
+   *
+   * <p>If the solver runs out of iterations or time before converging, the best solution found so
+   * far is kept.
+   *
+   * @param problem the problem to solve
+   * @param initial the initial guess for the problem's parameters
+   * @param options the iteration budget, tolerances, and deadline
+   * @return whether or not the solver converged
+   */
+  boolean solve(Problem problem, double[] initial, FitOptions options) {
+    return solve(problem, initial, options, null);
+  }
+
+  /**
+   * Minimizes the sum of the squared residuals of a problem, giving up early if the cutoff says
+   * so.
+   *
+   * @param problem the problem to solve
+   * @param initial the initial guess for the problem's parameters
+   * @param options the iteration budget, tolerances, and deadline
+   * @param cutoff a check run before each iteration, or {@code null}
+   * @return whether or not the solver converged
+   */
+  boolean solve(Problem problem, double[] initial, FitOptions options, Cutoff cutoff) {
+    final long start = System.nanoTime();
+    final long deadline = options.deadlineNanos();
+    final int maxIterations = options.maxIterations();
+    final double ftol = options.functionTolerance();
+    final double gtol = options.gradientTolerance();
+    final int k = problem.parameters();
+    System.arraycopy(initial, 0, params, 0, k);
+    this.iterations = 0;
+    this.evaluations = 1;
+    this.cost = problem.evaluate(params, gradient, hessian);
+    if (!Double.isFinite(cost)) {
+      return false;
+    }
+
+    double mu = INITIAL_DAMPING;
+    double nu = 2;
+    while (iterations < maxIterations) {
+      if (cost == 0 || maxAbs(gradient, k) <= gtol) {
+        return true;
+      }
+      if (deadline != Long.MAX_VALUE && System.nanoTime() - start >= deadline) {
+        return false;
+      }
+      if (cutoff != null && cutoff.test(iterations, cost)) {
+        return false;
+      }
+      iterations++;
+
+      // solve the damped normal equations for the next step
+      for (int i = 0; i < k * k; i++) {
+        system[i] = hessian[i];
+      }
+      for (int i = 0; i < k; i++) {
+        system[i * k + i] += mu * max(hessian[i * k + i], MIN_DIAGONAL);
+      }
+      if (!solveCholesky(k)) {
+        mu *= nu;
+        nu *= 2;
+        continue;
+      }
+
+      // check for a step too small to make any progress
+      double stepNorm = 0;
+      double paramsNorm = 0;
+      for (int i = 0; i < k; i++) {
+        candidate[i] = params[i] + step[i];
+        stepNorm += step[i] * step[i];
+        paramsNorm += params[i] * params[i];
+      }
+      if (sqrt(stepNorm) <= MIN_STEP * (sqrt(paramsNorm) + MIN_STEP)) {
+        return true;
+      }
+
+      final double candidateCost = problem.evaluate(candidate, candidateGradient, candidateHessian);
+      evaluations++;
+
+      // compare the actual reduction in cost with that predicted by the linear model
+      double predicted = 0;
+      for (int i = 0; i < k; i++) {
+        double s = 0;
+        for (int j = 0; j < k; j++) {
+          s += hessian[i * k + j] * step[j];
+        }
+        predicted -= step[i] * (2 * gradient[i] + s);
+      }
+      final double actual = cost - candidateCost;
+      final double rho = actual / predicted;
+
+      if (Double.isFinite(candidateCost) && actual > 0 && rho > 0) {
+        accept(k, candidateCost);
+        if (actual <= ftol * (cost + actual)) {
+          return true;
+        }
+        mu *= max(1.0 / 3, 1 - pow(2 * rho - 1, 3));
+        nu = 2;
+      } else {
+        mu *= nu;
+        nu *= 2;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Replaces the most recent solution with the given parameters of a problem, which may differ from
+   * the problem solved, so long as it has the same cost.
+   *
+   * @param problem the problem to evaluate
+   * @param solution the parameters of the solution
+   */
+  void evaluate(Problem problem, double[] solution) {
+    System.arraycopy(solution, 0, params, 0, problem.parameters());
+    this.cost = problem.evaluate(params, gradient, hessian);
+    this.evaluations++;
+  }
+
+  /**
+   * Returns one of the parameters of the most recent solution.
+   *
+   * @param i the index of the parameter
+   * @return the value of the parameter
+   */
+  double parameter(int i) {
+    return params[i];
+  }
+
+  /**
+   * Returns the sum of the squared residuals of the most recent solution.
+   *
+   * @return the residual sum of squares
+   */
+  double cost() {
+    return cost;
+  }
+
+  /**
+   * Returns the number of iterations run for the most recent solution.
+   *
+   * @return the number of iterations
+   */
+  int iterations() {
+    return iterations;
+  }
+
+  /**
+   * Returns the number of times the problem was evaluated for the most recent solution.
+   *
+   * @return the number of evaluations
+   */
+  int evaluations() {
+    return evaluations;
+  }
+
+  /**
+   * Calculates the inverse of {@code JᵀJ} at the most recent solution, which is proportional to the
+   * covariance matrix of its parameters.
+   *
+   * @param k the number of parameters of the problem
+   * @param inverse an array which will be filled with the inverse, in row-major order
+   * @return whether or not {@code JᵀJ} was invertible
+   */
+  boolean inverseHessian(int k, double[] inverse) {
+    System.arraycopy(hessian, 0, system, 0, k * k);
+    if (!decompose(k)) {
+      return false;
+    }
+    for (int j = 0; j < k; j++) {
+      for (int i = 0; i < k; i++) {
+        step[i] = i == j ? 1 : 0;
+      }
+      substitute(k, step);
+      for (int i = 0; i < k; i++) {
+        inverse[i * k + j] = step[i];
+      }
+    }
+    return true;
+  }
+
+  private void accept(int k, double candidateCost) {
+    System.arraycopy(candidate, 0, params, 0, k);
+    this.cost = candidateCost;
+
+    final double[] g = gradient;
+    this.gradient = candidateGradient;
+    this.candidateGradient = g;
+
+    final double[] h = hessian;
+    this.hessian = candidateHessian;
+    this.candidateHessian = h;
+  }
+
+  // solves system * step = -gradient, returning false if system isn't positive-definite
+  private boolean solveCholesky(int k) {
+    if (!decompose(k)) {
+      return false;
+    }
+    for (int i = 0; i < k; i++) {
+      step[i] = -gradient[i];
+    }
+    substitute(k, step);
+    return true;
+  }
+
+  // replaces system with its Cholesky decomposition, returning false if it isn't positive-definite
+  private boolean decompose(int k) {
+    final double[] a = system;
+    for (int j = 0; j < k; j++) {
+      double d = a[j * k + j];
+      for (int l = 0; l < j; l++) {
+        d -= a[j * k + l] * a[j * k + l];
+      }
+      if (!(d > 0)) {
+        return false;
+      }
+      d = sqrt(d);
+      a[j * k + j] = d;
+      for (int i = j + 1; i < k; i++) {
+        double s = a[i * k + j];
+        for (int l = 0; l < j; l++) {
+          s -= a[i * k + l] * a[j * k + l];
+        }
+        a[i * k + j] = s / d;
+      }
+    }
+    return true;
+  }
+
+  // solves the decomposed system for x in place, by forward and then back substitution
+  private void substitute(int k, double[] x) {
+    final double[] a = system;
+    for (int i = 0; i < k; i++) {
+      double s = x[i];
+      for (int l = 0; l < i; l++) {
+        s -= a[i * k + l] * x[l];
+      }
+      x[i] = s / a[i * k + i];
+    }
+
+    for (int i = k - 1; i >= 0; i--) {
+      double s = x[i];
+      for (int l = i + 1; l < k; l++) {
+        s -= a[l * k + i] * x[l];
+      }
+      x[i] = s / a[i * k + i];
+    }
+  }
+
+  private static double maxAbs(double[] v, int k) {
+    double m = 0;
+    for (int i = 0; i < k; i++) {
+      m = max(m, abs(v[i]));
+    }
+    return m;
+  }
+}
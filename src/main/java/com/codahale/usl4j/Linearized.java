@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.max;
+
+/**
+ * A closed-form estimate of the USL's parameters using Gunther's quadratic transform.
+ *
+ * <p>Rearranging the USL for the deviation from linearity gives {@code N/X = 1/λ + (σ/λ)(N-1) +
+ * (κ/λ)N(N-1)}, which is a quadratic polynomial in {@code N-1} and can be fit by ordinary least
+ * squares in a single pass. Because the errors are minimized in {@code N/X} rather than {@code X},
+ * the result is only an approximation of the least-squares fit of the USL itself, but it's usually
+ * a very good one.
+ */
+final class Linearized {
+
+  private Linearized() {
+    // utility class
+  }
+
+  /**
+   * Estimates the parameters of a model for a slice of measurements.
+   *
+   * @param concurrency the concurrency of each measurement
+   * @param throughput the throughput of each measurement
+   * @param offset the index of the first measurement
+   * @param length the number of measurements
+   * @param params an array which will be filled with σ, κ, and λ
+   * @return whether or not an estimate could be made
+   */
+  static boolean estimate(
+      double[] concurrency, double[] throughput, int offset, int length, double[] params) {
+    // scale N-1 to [0,1] to keep the normal equations well-conditioned
+    double scale = 0;
+    for (int i = offset; i < offset + length; i++) {
+      scale = max(scale, concurrency[i] - 1);
+    }
+    if (!(scale > 0)) {
+      return false;
+    }
+
+    // accumulate the normal equations for y = a + bt + ct², where t = (N-1)/scale and y = N/X
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    double s4 = 0;
+    double y0 = 0;
+    double y1 = 0;
+    double y2 = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double n = concurrency[i];
+      final double x = throughput[i];
+      if (n > 0 && x > 0) {
+        final double t = (n - 1) / scale;
+        final double t2 = t * t;
+        final double y = n / x;
+        s0 += 1;
+        s1 += t;
+        s2 += t2;
+        s3 += t2 * t;
+        s4 += t2 * t2;
+        y0 += y;
+        y1 += y * t;
+        y2 += y * t2;
+      }
+    }
+
+    // solve the symmetric 3x3 system by Cramer's rule
+    final double m0 = s2 * s4 - s3 * s3;
+    final double m1 = s1 * s4 - s2 * s3;
+    final double m2 = s1 * s3 - s2 * s2;
+    final double det = s0 * m0 - s1 * m1 + s2 * m2;
+    if (!(det > 0)) {
+      return false;
+    }
+    final double a = (y0 * m0 - s1 * (y1 * s4 - s3 * y2) + s2 * (y1 * s3 - s2 * y2)) / det;
+    final double b = (s0 * (y1 * s4 - s3 * y2) - y0 * m1 + s2 * (s1 * y2 - y1 * s2)) / det;
+    final double c = (s0 * (s2 * y2 - y1 * s3) - s1 * (s1 * y2 - y1 * s2) + y0 * m2) / det;
+
+    // map the polynomial in t back to 1/λ + (σ/λ)(N-1) + (κ/λ)N(N-1)
+    final double q1 = b / scale;
+    final double q2 = c / (scale * scale);
+    if (!(a > 0)) {
+      return false;
+    }
+    params[0] = (q1 - q2) / a;
+    params[1] = q2 / a;
+    params[2] = 1 / a;
+    return Double.isFinite(params[0]) && Double.isFinite(params[1]) && Double.isFinite(params[2]);
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A closed-loop load generator which measures a task's throughput and latency at increasing levels
+ * of concurrency.
+ *
+ * <p>At each level {@code N}, the sweep starts {@code N} threads, each of which calls the task in
+ * a loop, with no think time, for the warmup period and then the measurement period. Only calls
+ * which finish within the measurement period are counted. Each thread keeps its own count and sum
+ * of latencies, which are only combined once the threads have finished, and times each call with a
+ * single call to {@link System#nanoTime()}, since the end of one call is the start of the next, so
+ * the harness adds as little as possible to the system it measures.
+ *
+ * <p>Each level produces a {@link Measurement} of the mean throughput and latency of the calls,
+ * which can be passed straight to {@link Model#build(List)}. Its concurrency is that implied by
+ * Little's law, which is the concurrency the task actually saw, and is a little below {@code N} by
+ * the harness's own overhead.
+ *
+ * <p>By default, the threads are virtual threads if the runtime supports them, and daemon platform
+ * threads if not.
+ */
+public final class LoadSweep {
+
+  private final Callable<?> task;
+  private final Duration warmup;
+  private final Duration duration;
+  private final ThreadFactory threadFactory;
+
+  /**
+   * Creates a sweep of the given task, with a warmup period of one second and a measurement period
+   * of five seconds at each level.
+   *
+   * @param task the task to call
+   */
+  public LoadSweep(Callable<?> task) {
+    this(task, Duration.ofSeconds(1), Duration.ofSeconds(5), defaultThreadFactory());
+  }
+
+  private LoadSweep(
+      Callable<?> task, Duration warmup, Duration duration, ThreadFactory threadFactory) {
+    this.task = Objects.requireNonNull(task);
+    this.warmup = Objects.requireNonNull(warmup);
+    this.duration = Objects.requireNonNull(duration);
+    this.threadFactory = Objects.requireNonNull(threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep with the given warmup period.
+   *
+   * @param warmup the time to run the task at each level before measuring it
+   * @return a new {@link LoadSweep}
+   */
+  public LoadSweep withWarmup(Duration warmup) {
+    if (warmup.isNegative()) {
+      throw new IllegalArgumentException("warmup must not be negative");
+    }
+    return new LoadSweep(task, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep with the given measurement period.
+   *
+   * @param duration the time to measure the task at each level
+   * @return a new {@link LoadSweep}
+   */
+  public LoadSweep withDuration(Duration duration) {
+    if (duration.isNegative() || duration.isZero()) {
+      throw new IllegalArgumentException("duration must be positive");
+    }
+    return new LoadSweep(task, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep which creates its threads with the given factory.
+   *
+   * @param threadFactory the factory for the threads which call the task
+   * @return a new {@link LoadSweep}
+   */
+  public LoadSweep withThreadFactory(ThreadFactory threadFactory) {
+    return new LoadSweep(task, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Measures the task at each level of concurrency from {@code 1} to {@code maxConcurrency}.
+   *
+   * @param maxConcurrency the highest level of concurrency
+   * @return a {@link Measurement} for each level
+   * @throws ExecutionException if the task throws an exception or error
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public List<Measurement> run(int maxConcurrency)
+      throws ExecutionException, InterruptedException {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be positive");
+    }
+    final List<Measurement> measurements = new ArrayList<>(maxConcurrency);
+    for (int n = 1; n <= maxConcurrency; n++) {
+      measurements.add(measure(n));
+    }
+    return measurements;
+  }
+
+  /**
+   * Measures the task at the given level of concurrency.
+   *
+   * @param concurrency the number of threads which call the task
+   * @return a {@link Measurement} of the task's throughput and latency
+   * @throws ExecutionException if the task throws an exception or error
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public Measurement measure(int concurrency) throws ExecutionException, InterruptedException {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be positive");
+    }
+
+    // fix the measurement period in advance, so the workers never need to coordinate
+    final long start = System.nanoTime() + FitOptions.saturatedNanos(warmup);
+    final long end = start + FitOptions.saturatedNanos(duration);
+    final Worker[] workers = new Worker[concurrency];
+    final Thread[] threads = new Thread[concurrency];
+    for (int i = 0; i < concurrency; i++) {
+      workers[i] = new Worker(task, start, end);
+    }
+
+    long count = 0;
+    long latency = 0;
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        threads[i] = threadFactory.newThread(workers[i]);
+      }
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (int i = 0; i < concurrency; i++) {
+        threads[i].join();
+        if (workers[i].failure != null) {
+          throw new ExecutionException(workers[i].failure);
+        }
+        count += workers[i].count;
+        latency += workers[i].latency;
+      }
+    } finally {
+      for (Worker worker : workers) {
+        worker.stopped = true;
+      }
+      joinAll(threads);
+    }
+
+    if (count == 0) {
+      throw new IllegalStateException("No calls finished during the measurement period");
+    }
+    final double seconds = (end - start) / 1e9;
+    return Measurement.ofThroughput().andLatency(count / seconds, latency / 1e9 / count);
+  }
+
+  // waits for every thread which was started to exit, even if interrupted, so that a failed
+  // measurement doesn't leave workers calling the task in the background
+  static void joinAll(Thread[] threads) {
+    boolean interrupted = false;
+    for (Thread thread : threads) {
+      while (thread != null) {
+        try {
+          thread.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // virtual threads if the runtime has them (Java 21+), platform threads if not
+  static ThreadFactory defaultThreadFactory() {
+    try {
+      final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory)
+          Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return r -> {
+        final Thread thread = new Thread(r, "load-sweep");
+        thread.setDaemon(true);
+        return thread;
+      };
+    }
+  }
+
+  private static final class Worker implements Runnable {
+    private final Callable<?> task;
+    private final long start;
+    private final long end;
+    private volatile boolean stopped;
+    private long count;
+    private long latency;
+    private Throwable failure;
+
+    private Worker(Callable<?> task, long start, long end) {
+      this.task = task;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public void run() {
+      long t0 = System.nanoTime();
+      try {
+        while (t0 < end && !stopped) {
+          task.call();
+          final long t1 = System.nanoTime();
+          if (t1 > start && t1 <= end) {
+            count++;
+            latency += t1 - t0;
+          }
+          t0 = t1;
+        }
+      } catch (Throwable t) {
+        // errors too, e.g. a failed assertion, so the sweep fails rather than under-counting
+        this.failure = t;
+      }
+    }
+  }
+}
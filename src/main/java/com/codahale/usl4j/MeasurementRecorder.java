@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A recorder of measurements from many threads at once, which can be drained into a packed set of
+ * measurements for fitting.
+ *
+ * <p>Measurements are recorded into one of several stripes, picked by thread, each of which is a
+ * pair of primitive buffers. Recording a measurement reserves a slot in its stripe's buffer with a
+ * single atomic increment, writes it, and then commits it with another, so threads never block one
+ * another. If a stripe's buffer is full, the measurement is dropped, and counted as such.
+ *
+ * <p>{@link #drain()} swaps each stripe's buffer for an empty spare, closing the old one to further
+ * reservations, waits for any writes already in progress to commit, and copies the measurements
+ * out. The old buffer then becomes the stripe's spare, so once each stripe has been drained once,
+ * draining allocates nothing but the snapshot.
+ */
+public final class MeasurementRecorder {
+
+  // added to a buffer's reservation count to close it; larger than any buffer's capacity
+  private static final int CLOSED = 1 << 30;
+
+  private final AtomicReferenceArray<Buffer> stripes;
+  private final Buffer[] spares; // guarded by this
+  private final int mask;
+  private final int capacity;
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * Creates a recorder with a stripe for every two available processors and the given capacity
+   * per stripe.
+   *
+   * @param capacity the maximum number of measurements each stripe can hold between drains
+   */
+  public MeasurementRecorder(int capacity) {
+    this(Runtime.getRuntime().availableProcessors() * 2, capacity);
+  }
+
+  /**
+   * Creates a recorder with the given number of stripes and the given capacity per stripe.
+   *
+   * @param stripes the number of stripes, which is rounded up to a power of two
+   * @param capacity the maximum number of measurements each stripe can hold between drains
+   */
+  public MeasurementRecorder(int stripes, int capacity) {
+    if (stripes < 1 || stripes > (1 << 16)) {
+      throw new IllegalArgumentException("stripes must be between 1 and 65536");
+    }
+    if (capacity < 1 || capacity >= CLOSED) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+    }
+    final int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+    this.stripes = new AtomicReferenceArray<>(size);
+    this.spares = new Buffer[size];
+    this.mask = size - 1;
+    this.capacity = capacity;
+    for (int i = 0; i < size; i++) {
+      this.stripes.set(i, new Buffer(capacity));
+    }
+  }
+
+  /**
+   * Records a measurement.
+   *
+   * @param measurement a measurement
+   * @return {@code true} if the measurement was recorded, {@code false} if its stripe was full
+   */
+  public boolean record(Measurement measurement) {
+    return record(measurement.concurrency(), measurement.throughput());
+  }
+
+  /**
+   * Records a measurement.
+   *
+   * @param concurrency the number of concurrent workers
+   * @param throughput the throughput of requests
+   * @return {@code true} if the measurement was recorded, {@code false} if its stripe was full
+   */
+  public boolean record(double concurrency, double throughput) {
+    final int stripe = stripe();
+    while (true) {
+      final Buffer buffer = stripes.get(stripe);
+      // check for a full buffer first, so that dropped measurements can't push the reservation
+      // count up to CLOSED
+      final int r = buffer.reserved.get();
+      final int i = r >= CLOSED || r >= capacity ? r : buffer.reserved.getAndIncrement();
+      if (i >= CLOSED) {
+        // the buffer was drained after we read it, so try the new one
+        continue;
+      }
+      if (i >= capacity) {
+        dropped.increment();
+        return false;
+      }
+      buffer.concurrency[i] = concurrency;
+      buffer.throughput[i] = throughput;
+      buffer.committed.incrementAndGet();
+      return true;
+    }
+  }
+
+  /**
+   * The number of measurements which have been dropped because their stripe was full.
+   *
+   * @return the number of dropped measurements
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Removes all recorded measurements from the recorder and returns them.
+   *
+   * @return the recorded measurements, in no particular order
+   */
+  public synchronized Snapshot drain() {
+    final Buffer[] drained = new Buffer[stripes.length()];
+    final int[] counts = new int[drained.length];
+    int total = 0;
+    for (int s = 0; s < drained.length; s++) {
+      final Buffer buffer = stripes.get(s);
+      if (buffer.reserved.get() == 0) {
+        continue;
+      }
+      Buffer spare = spares[s];
+      if (spare == null) {
+        spare = new Buffer(capacity);
+      } else {
+        spare.reopen();
+      }
+      stripes.set(s, spare);
+
+      // close the old buffer; anything reserved before this must be waited for, and anything
+      // reserved after it will move on to the new buffer
+      final int n = Math.min(buffer.reserved.getAndAdd(CLOSED), capacity);
+      while (buffer.committed.get() < n) {
+        Thread.yield();
+      }
+      drained[s] = buffer;
+      counts[s] = n;
+      total += n;
+    }
+
+    final double[] concurrency = new double[total];
+    final double[] throughput = new double[total];
+    int offset = 0;
+    for (int s = 0; s < drained.length; s++) {
+      if (drained[s] != null) {
+        System.arraycopy(drained[s].concurrency, 0, concurrency, offset, counts[s]);
+        System.arraycopy(drained[s].throughput, 0, throughput, offset, counts[s]);
+        offset += counts[s];
+        spares[s] = drained[s];
+      }
+    }
+    return new Snapshot(concurrency, throughput);
+  }
+
+  private int stripe() {
+    // spread the thread ID's bits so that sequential IDs don't cluster
+    final long id = Thread.currentThread().getId();
+    final int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static final class Buffer {
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger committed = new AtomicInteger();
+    private final double[] concurrency;
+    private final double[] throughput;
+
+    private Buffer(int capacity) {
+      this.concurrency = new double[capacity];
+      this.throughput = new double[capacity];
+    }
+
+    // only called once every write reserved before the buffer was closed has committed; a thread
+    // which reserves a slot after this is writing into the buffer which is about to be installed
+    private void reopen() {
+      committed.set(0);
+      reserved.set(0);
+    }
+  }
+
+  /** A packed set of measurements drained from a {@link MeasurementRecorder}. */
+  public static final class Snapshot {
+    private final double[] concurrency;
+    private final double[] throughput;
+
+    private Snapshot(double[] concurrency, double[] throughput) {
+      this.concurrency = concurrency;
+      this.throughput = throughput;
+    }
+
+    /**
+     * The number of measurements in the snapshot.
+     *
+     * @return the number of measurements
+     */
+    public int size() {
+      return concurrency.length;
+    }
+
+    /**
+     * The concurrency of each measurement, parallel to {@link #throughput()}.
+     *
+     * @return an array of concurrency values, owned by the caller
+     */
+    public double[] concurrency() {
+      return concurrency;
+    }
+
+    /**
+     * The throughput of each measurement, parallel to {@link #concurrency()}.
+     *
+     * @return an array of throughput values, owned by the caller
+     */
+    public double[] throughput() {
+      return throughput;
+    }
+  }
+}
@@ -24,19 +24,21 @@ import java.util.List;
 import java.util.Objects;
 import java.util.StringJoiner;
 import java.util.stream.Collector;
-import org.ddogleg.optimization.FactoryOptimization;
-import org.ddogleg.optimization.UnconstrainedLeastSquares;
-import org.ddogleg.optimization.UtilOptimize;
-import org.ddogleg.optimization.functions.FunctionNtoM;
 
 /** A parametrized model of the Universal Scalability Law. */
 public class Model {
 
-  private static final int MIN_MEASUREMENTS = 6;
+  static final int MIN_MEASUREMENTS = 6;
   private final double sigma;
   private final double kappa;
   private final double lambda;
 
+  // derived constants, calculated once so that the predictions don't have to
+  private final double maxConcurrency;
+  private final double maxThroughput;
+  private final double sigmaKappaSquares;
+  private final double twoKappa;
+
   /**
    * Creates a model given the three parameters: σ, κ, and λ.
    *
@@ -48,6 +50,11 @@ public class Model {
     this.sigma = sigma;
     this.kappa = kappa;
     this.lambda = lambda;
+    final double n = floor(sqrt((1 - sigma) / kappa));
+    this.maxConcurrency = n;
+    this.maxThroughput = (lambda * n) / (1 + (sigma * (n - 1)) + (kappa * n * (n - 1)));
+    this.sigmaKappaSquares = pow(sigma, 2) + pow(kappa, 2);
+    this.twoKappa = 2 * kappa;
   }
 
   /**
@@ -73,53 +80,177 @@ public class Model {
    * fit the observed values using unconstrained least-squares regression. The resulting values for
    * λ, κ, and σ are the parameters of the returned {@link Model}.
    *
+   * <p>To fit many models, use a {@link ModelFitter} instead.
+   *
    * @param measurements a collection of measurements
    * @return a {@link Model} instance
    */
   public static Model build(List<Measurement> measurements) {
+    final ModelFitter fitter = new ModelFitter();
+    return checkConverged(fitter, fitter.fit(measurements));
+  }
+
+  /**
+   * Given a collection of measurements and an initial guess, builds a {@link Model}.
+   *
+   * <p>When refitting a model to measurements which have changed only slightly since the previous
+   * fit, using the previous model as the initial guess lets the fit converge in fewer iterations.
+   *
+   * @param measurements a collection of measurements
+   * @param initialGuess a model whose parameters are close to the expected solution
+   * @return a {@link Model} instance
+   * @see #build(List)
+   */
+  public static Model build(List<Measurement> measurements, Model initialGuess) {
+    final ModelFitter fitter = new ModelFitter();
+    return checkConverged(fitter, fitter.fit(measurements, initialGuess));
+  }
+
+  /**
+   * Given parallel arrays of concurrency and throughput measurements, builds a {@link Model}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @return a {@link Model} instance
+   * @see #build(List)
+   */
+  public static Model build(double[] concurrency, double[] throughput) {
+    final ModelFitter fitter = new ModelFitter();
+    return checkConverged(fitter, fitter.fit(concurrency, throughput));
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements, builds a {@link
+   * Model}.
+   *
+   * <p>Unlike {@link Measurement}, the values are not checked for being non-negative.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @return a {@link Model} instance
+   * @see #build(List)
+   */
+  public static Model build(double[] concurrency, double[] throughput, int offset, int length) {
+    final ModelFitter fitter = new ModelFitter();
+    return checkConverged(fitter, fitter.fit(concurrency, throughput, offset, length));
+  }
+
+  /**
+   * Given a collection of measurements, fits a {@link Model} and returns it along with diagnostics
+   * about the fit.
+   *
+   * <p>Unlike {@link #build(List)}, this doesn't throw an exception if the fit doesn't converge.
+   *
+   * @param measurements a collection of measurements
+   * @return a {@link FitResult} instance
+   */
+  public static FitResult fit(List<Measurement> measurements) {
+    return fit(measurements, FitOptions.defaults());
+  }
+
+  /**
+   * Given a collection of measurements, fits a {@link Model} within the limits of the given
+   * options, and returns it along with diagnostics about the fit.
+   *
+   * @param measurements a collection of measurements
+   * @param options the iteration budget, tolerances, and deadline for the fit
+   * @return a {@link FitResult} instance
+   * @see #fit(List)
+   */
+  public static FitResult fit(List<Measurement> measurements, FitOptions options) {
+    final ModelFitter fitter = new ModelFitter(options);
+    fitter.fit(measurements);
+    return fitter.result();
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements, fits a {@link
+   * Model} within the limits of the given options, and returns it along with diagnostics about the
+   * fit.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @param options the iteration budget, tolerances, and deadline for the fit
+   * @return a {@link FitResult} instance
+   * @see #fit(List)
+   */
+  public static FitResult fit(
+      double[] concurrency, double[] throughput, int offset, int length, FitOptions options) {
+    final ModelFitter fitter = new ModelFitter(options);
+    fitter.fit(concurrency, throughput, offset, length);
+    return fitter.result();
+  }
+
+  /**
+   * Given a collection of measurements, builds an approximate {@link Model} in closed form.
+   *
+   * <p>Rather than iteratively fitting the USL itself, this uses Gunther's quadratic transform to
+   * fit the deviation from linearity, {@code N/X}, as a quadratic polynomial in {@code N-1} using
+   * ordinary least squares. This requires a single pass over the measurements and no iteration,
+   * but weights the measurements differently than {@link #build(List)}, and so the parameters will
+   * not be exactly the same.
+   *
+   * @param measurements a collection of measurements
+   * @return a {@link Model} instance
+   * @see "Guerrilla Capacity Planning, Chapter 5"
+   */
+  public static Model buildLinearized(List<Measurement> measurements) {
     if (measurements.size() < MIN_MEASUREMENTS) {
       throw new IllegalArgumentException("Needs at least 6 measurements");
     }
-    // use Levenberg-Marquardt least-squares to determine best fitting coefficients for the model
-    final UnconstrainedLeastSquares<?> lm = FactoryOptimization.levenbergMarquardt(null, true);
-    lm.setFunction(
-        new FunctionNtoM() {
-
-          @Override
-          public int getNumOfInputsN() {
-            return 3;
-          }
-
-          @Override
-          public int getNumOfOutputsM() {
-            return measurements.size();
-          }
-
-          @Override
-          public void process(double[] input, double[] output) {
-            // calculates and returns the residuals for each observation
-            final Model model = new Model(input[0], input[1], input[2]);
-            for (int i = 0; i < measurements.size(); i++) {
-              final Measurement m = measurements.get(i);
-              output[i] = m.throughput() - model.throughputAtConcurrency(m.concurrency());
-            }
-          }
-        },
-        null);
-
-    // calculate a best guess of lambda
-    final double l =
-        measurements.stream()
-            .mapToDouble(m -> m.throughput() / m.concurrency())
-            .max()
-            .orElseThrow(IllegalArgumentException::new);
-    lm.initialize(new double[] {0.1, 0.01, l}, 1e-12, 1e-12);
-
-    // run iterations until we converge or get bored
-    if (!UtilOptimize.process(lm, 5_000)) {
+    final double[] concurrency = new double[measurements.size()];
+    final double[] throughput = new double[measurements.size()];
+    int i = 0;
+    for (Measurement m : measurements) {
+      concurrency[i] = m.concurrency();
+      throughput[i] = m.throughput();
+      i++;
+    }
+    return buildLinearized(concurrency, throughput, 0, i);
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements, builds an
+   * approximate {@link Model} in closed form.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @return a {@link Model} instance
+   * @see #buildLinearized(List)
+   */
+  public static Model buildLinearized(
+      double[] concurrency, double[] throughput, int offset, int length) {
+    checkSlice(concurrency, throughput, offset, length);
+    final double[] params = new double[3];
+    if (!Linearized.estimate(concurrency, throughput, offset, length, params)) {
+      throw new IllegalArgumentException("Unable to build a model for these values");
+    }
+    return new Model(params[0], params[1], params[2]);
+  }
+
+  private static Model checkConverged(ModelFitter fitter, Model model) {
+    if (!fitter.isConverged()) {
       throw new IllegalArgumentException("Unable to build a model for these values");
     }
-    return new Model(lm.getParameters()[0], lm.getParameters()[1], lm.getParameters()[2]);
+    return model;
+  }
+
+  static void checkSlice(double[] concurrency, double[] throughput, int offset, int length) {
+    if (offset < 0
+        || length < 0
+        || offset > concurrency.length - length
+        || offset > throughput.length - length) {
+      throw new IllegalArgumentException("Slice is out of bounds");
+    }
+    if (length < MIN_MEASUREMENTS) {
+      throw new IllegalArgumentException("Needs at least 6 measurements");
+    }
   }
 
   /**
@@ -160,6 +291,26 @@ public class Model {
     return (lambda * n) / (1 + (sigma * (n - 1)) + (kappa * n * (n - 1)));
   }
 
+  /**
+   * The expected throughput given each of a number of concurrent workers.
+   *
+   * <p>This produces exactly the same values as {@link #throughputAtConcurrency(double)}, but is
+   * written as a simple loop over arrays, which the JIT can vectorize.
+   *
+   * @param n the numbers of concurrent workers
+   * @param out an array, at least as long as {@code n}, which will be filled with {@code X(N)}
+   */
+  public void throughputAtConcurrency(double[] n, double[] out) {
+    checkLengths(n, out);
+    final double s = sigma;
+    final double k = kappa;
+    final double l = lambda;
+    for (int i = 0; i < n.length; i++) {
+      final double v = n[i];
+      out[i] = (l * v) / (1 + (s * (v - 1)) + (k * v * (v - 1)));
+    }
+  }
+
   /**
    * The expected mean latency given a number of concurrent workers.
    *
@@ -171,6 +322,26 @@ public class Model {
     return (1 + (sigma * (n - 1)) + (kappa * n * (n - 1))) / lambda;
   }
 
+  /**
+   * The expected mean latency given each of a number of concurrent workers.
+   *
+   * <p>This produces exactly the same values as {@link #latencyAtConcurrency(double)}, but is
+   * written as a simple loop over arrays, which the JIT can vectorize.
+   *
+   * @param n the numbers of concurrent workers
+   * @param out an array, at least as long as {@code n}, which will be filled with {@code R(N)}
+   */
+  public void latencyAtConcurrency(double[] n, double[] out) {
+    checkLengths(n, out);
+    final double s = sigma;
+    final double k = kappa;
+    final double l = lambda;
+    for (int i = 0; i < n.length; i++) {
+      final double v = n[i];
+      out[i] = (1 + (s * (v - 1)) + (k * v * (v - 1))) / l;
+    }
+  }
+
   /**
    * The maximum expected number of concurrent workers the system can handle.
    *
@@ -178,7 +349,7 @@ public class Model {
    * @see "Practical Scalability Analysis with the Universal Scalability Law, Equation 4"
    */
   public double maxConcurrency() {
-    return floor(sqrt((1 - sigma) / kappa));
+    return maxConcurrency;
   }
 
   /**
@@ -187,7 +358,7 @@ public class Model {
    * @return {@code X}<sub>max</sub>
    */
   public double maxThroughput() {
-    return throughputAtConcurrency(maxConcurrency());
+    return maxThroughput;
   }
 
   /**
@@ -201,6 +372,24 @@ public class Model {
     return (sigma - 1) / (sigma * x - lambda);
   }
 
+  /**
+   * The expected mean latency given each of a number of throughputs.
+   *
+   * <p>This produces exactly the same values as {@link #latencyAtThroughput(double)}, but is
+   * written as a simple loop over arrays, which the JIT can vectorize.
+   *
+   * @param x the throughputs of requests
+   * @param out an array, at least as long as {@code x}, which will be filled with {@code R(X)}
+   */
+  public void latencyAtThroughput(double[] x, double[] out) {
+    checkLengths(x, out);
+    final double s = sigma;
+    final double l = lambda;
+    for (int i = 0; i < x.length; i++) {
+      out[i] = (s - 1) / (s * x[i] - l);
+    }
+  }
+
   /**
    * The expected throughput given a mean latency.
    *
@@ -209,9 +398,9 @@ public class Model {
    * @see "Practical Scalability Analysis with the Universal Scalability Law, Equation 9"
    */
   public double throughputAtLatency(double r) {
-    final double a = 2 * kappa * (2 * lambda * r + sigma - 2);
-    final double b = sqrt(pow(sigma, 2) + pow(kappa, 2) + a);
-    return (b - kappa + sigma) / (2.0 * kappa * r);
+    final double a = twoKappa * (2 * lambda * r + sigma - 2);
+    final double b = sqrt(sigmaKappaSquares + a);
+    return (b - kappa + sigma) / (twoKappa * r);
   }
 
   /**
@@ -222,9 +411,9 @@ public class Model {
    * @see "Practical Scalability Analysis with the Universal Scalability Law, Equation 10"
    */
   public double concurrencyAtLatency(double r) {
-    final double a = (2 * kappa * ((2 * lambda * r) + sigma - 2));
-    final double b = sqrt(pow(sigma, 2) + pow(kappa, 2) + a);
-    return (kappa - sigma + b) / (2 * kappa);
+    final double a = (twoKappa * ((2 * lambda * r) + sigma - 2));
+    final double b = sqrt(sigmaKappaSquares + a);
+    return (kappa - sigma + b) / twoKappa;
   }
 
   /**
@@ -264,6 +453,38 @@ public class Model {
     return kappa == 0;
   }
 
+  // the largest whole concurrency, within [min, max], which is at most Nmax and, if slaSeconds
+  // isn't NaN, whose latency is at most slaSeconds; a model with κ <= 0 has no throughput peak,
+  // since a slightly negative κ is just a noisy fit of a system with no coherency costs
+  int concurrencyLimit(double slaSeconds, int min, int max) {
+    double n = kappa > 0 ? maxConcurrency : Double.POSITIVE_INFINITY;
+    if (!Double.isNaN(slaSeconds)) {
+      n = Math.min(n, concurrencyAtSla(slaSeconds));
+    }
+    if (Double.isNaN(n) || n < min) {
+      return min;
+    }
+    return n >= max ? max : (int) n;
+  }
+
+  private double concurrencyAtSla(double r) {
+    if (kappa > 0) {
+      return concurrencyAtLatency(r);
+    }
+    // with no coherency costs, R(N) = (1 + σ(N-1))/λ, which is linear in N
+    final double excess = (lambda * r) - 1;
+    if (sigma > 0) {
+      return 1 + (excess / sigma);
+    }
+    return excess >= 0 ? Double.POSITIVE_INFINITY : 0;
+  }
+
+  private static void checkLengths(double[] in, double[] out) {
+    if (out.length < in.length) {
+      throw new IllegalArgumentException("Output array is shorter than input array");
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
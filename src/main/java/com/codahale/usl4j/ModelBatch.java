@@ -0,0 +1,286 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The results of fitting a {@link Model} to each of many sets of measurements.
+ *
+ * <p>The measurements are passed as packed parallel columns of concurrency and throughput, with an
+ * array of offsets marking where each set starts: set {@code i} is made up of the measurements
+ * from {@code offsets[i]} (inclusive) to {@code offsets[i+1]} (exclusive). The sets are fit by
+ * one task per thread of a {@link ForkJoinPool}, each of which takes small runs of sets from a
+ * shared counter and fits them all with a single solver, and the results are stored in parallel
+ * arrays rather than as individual objects. The solvers belong to the batch, and are garbage once
+ * it's done.
+ *
+ * <p>A set which can't be fit (e.g. because it has fewer than six measurements) doesn't fail the
+ * whole batch, but is left unfitted, with {@code NaN} parameters. A set whose fit runs out of
+ * iterations or time keeps the best model found, but isn't {@link #isConverged(int) converged}.
+ */
+public final class ModelBatch {
+
+  private final double[] sigma;
+  private final double[] kappa;
+  private final double[] lambda;
+  private final double[] residualSumOfSquares;
+  private final boolean[] converged;
+
+  private ModelBatch(int size) {
+    this.sigma = new double[size];
+    this.kappa = new double[size];
+    this.lambda = new double[size];
+    this.residualSumOfSquares = new double[size];
+    this.converged = new boolean[size];
+    Arrays.fill(sigma, Double.NaN);
+    Arrays.fill(kappa, Double.NaN);
+    Arrays.fill(lambda, Double.NaN);
+    Arrays.fill(residualSumOfSquares, Double.NaN);
+  }
+
+  /**
+   * Fits a model to each set of measurements, using the {@link FitOptions#defaults() default
+   * options} and the {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offsets the index of the first measurement of each set, followed by the index after the
+   *     last measurement of the last set
+   * @return a {@link ModelBatch} instance
+   */
+  public static ModelBatch fit(double[] concurrency, double[] throughput, int[] offsets) {
+    return fit(concurrency, throughput, offsets, FitOptions.defaults(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Fits a model to each set of measurements.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offsets the index of the first measurement of each set, followed by the index after the
+   *     last measurement of the last set
+   * @param options the iteration budget, tolerances, and deadline for each fit
+   * @param pool the pool on which to run the fits
+   * @return a {@link ModelBatch} instance
+   */
+  public static ModelBatch fit(
+      double[] concurrency,
+      double[] throughput,
+      int[] offsets,
+      FitOptions options,
+      ForkJoinPool pool) {
+    Objects.requireNonNull(options);
+    if (concurrency.length != throughput.length) {
+      throw new IllegalArgumentException("Needs the same number of concurrency/throughput values");
+    }
+    if (offsets.length == 0) {
+      throw new IllegalArgumentException("Needs at least one offset");
+    }
+    for (int i = 0; i < offsets.length; i++) {
+      if (offsets[i] < 0
+          || offsets[i] > concurrency.length
+          || (i > 0 && offsets[i] < offsets[i - 1])) {
+        throw new IllegalArgumentException("Offsets are out of order or out of bounds");
+      }
+    }
+
+    final int size = offsets.length - 1;
+    final ModelBatch batch = new ModelBatch(size);
+    if (size > 0) {
+      // hand out a few runs of sets per worker, so that uneven sets still balance out
+      final int workers = Math.min(size, pool.getParallelism());
+      final int run = Math.max(1, size / (workers * 8));
+      final AtomicInteger next = new AtomicInteger();
+      final List<Worker> tasks = new ArrayList<>(workers);
+      for (int i = 0; i < workers; i++) {
+        tasks.add(batch.new Worker(concurrency, throughput, offsets, options, next, run));
+      }
+      pool.invoke(
+          new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+              invokeAll(tasks);
+            }
+          });
+    }
+    return batch;
+  }
+
+  /**
+   * The number of sets of measurements in the batch.
+   *
+   * @return the number of sets
+   */
+  public int size() {
+    return lambda.length;
+  }
+
+  /**
+   * Whether or not a model was fit to the given set, whether or not the fit converged.
+   *
+   * @param i the index of the set
+   * @return {@code true} if a model was fit, {@code false} if the set couldn't be fit
+   * @see #isConverged(int)
+   */
+  public boolean isFitted(int i) {
+    return !Double.isNaN(lambda[i]);
+  }
+
+  /**
+   * Whether or not the fit of the given set converged.
+   *
+   * @param i the index of the set
+   * @return {@code true} if the fit converged, {@code false} if it ran out of iterations or time,
+   *     or if the set couldn't be fit
+   */
+  public boolean isConverged(int i) {
+    return converged[i];
+  }
+
+  /**
+   * The coefficient of contention of the given set's model.
+   *
+   * @param i the index of the set
+   * @return {@code σ}, or {@code NaN} if the set couldn't be fit
+   */
+  public double sigma(int i) {
+    return sigma[i];
+  }
+
+  /**
+   * The coefficient of crosstalk/coherency of the given set's model.
+   *
+   * @param i the index of the set
+   * @return {@code κ}, or {@code NaN} if the set couldn't be fit
+   */
+  public double kappa(int i) {
+    return kappa[i];
+  }
+
+  /**
+   * The coefficient of performance of the given set's model.
+   *
+   * @param i the index of the set
+   * @return {@code λ}, or {@code NaN} if the set couldn't be fit
+   */
+  public double lambda(int i) {
+    return lambda[i];
+  }
+
+  /**
+   * The sum of the squared residuals of the given set's model.
+   *
+   * @param i the index of the set
+   * @return {@code SSE}, or {@code NaN} if the set couldn't be fit
+   */
+  public double residualSumOfSquares(int i) {
+    return residualSumOfSquares[i];
+  }
+
+  /**
+   * The model of the given set.
+   *
+   * @param i the index of the set
+   * @return a {@link Model} instance
+   * @throws IllegalStateException if the set couldn't be fit
+   */
+  public Model model(int i) {
+    if (!isFitted(i)) {
+      throw new IllegalStateException("Unable to build a model for set " + i);
+    }
+    return new Model(sigma[i], kappa[i], lambda[i]);
+  }
+
+  private final class Worker extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final transient double[] concurrency;
+    private final transient double[] throughput;
+    private final int[] offsets;
+    private final transient FitOptions options;
+    private final AtomicInteger next;
+    private final int run;
+    private final transient LevenbergMarquardt lm = new LevenbergMarquardt();
+    private final transient Residuals residuals = new Residuals();
+    private final transient ProjectedResiduals projected = new ProjectedResiduals();
+    private final double[] initial = new double[3];
+
+    private Worker(
+        double[] concurrency,
+        double[] throughput,
+        int[] offsets,
+        FitOptions options,
+        AtomicInteger next,
+        int run) {
+      this.concurrency = concurrency;
+      this.throughput = throughput;
+      this.offsets = offsets;
+      this.options = options;
+      this.next = next;
+      this.run = run;
+    }
+
+    @Override
+    protected void compute() {
+      final int size = offsets.length - 1;
+      try {
+        int from;
+        while ((from = next.getAndAdd(run)) < size) {
+          fit(from, Math.min(size, from + run));
+        }
+      } finally {
+        residuals.reset(null, null, 0, 0);
+        projected.reset(null, null, 0, 0);
+      }
+    }
+
+    private void fit(int from, int to) {
+      for (int i = from; i < to; i++) {
+        final int offset = offsets[i];
+        final int length = offsets[i + 1] - offset;
+        if (length < Model.MIN_MEASUREMENTS) {
+          continue;
+        }
+
+        residuals.reset(concurrency, throughput, offset, length);
+        residuals.guess(initial);
+        final boolean ok;
+        if (options.variableProjection()) {
+          projected.reset(concurrency, throughput, offset, length);
+          ok = projected.solve(lm, residuals, initial, options, null);
+        } else {
+          ok = lm.solve(residuals, initial, options);
+        }
+        if (Double.isFinite(lm.cost())) {
+          sigma[i] = lm.parameter(0);
+          kappa[i] = lm.parameter(1);
+          lambda[i] = lm.parameter(2);
+          residualSumOfSquares[i] = lm.cost();
+          converged[i] = ok;
+        }
+      }
+    }
+  }
+}
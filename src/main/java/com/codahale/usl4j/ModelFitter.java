@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A reusable fitter of {@link Model} instances.
+ *
+ * <p>Fits the same way as {@link Model#build(List)}, but keeps its solver and working buffers
+ * between fits, so that once warmed up, refitting allocates nothing but the returned {@link Model}.
+ * This makes it suited for refitting many models at a high rate.
+ *
+ * <p>If the measurements being fit change gradually over time (e.g. a sliding window of recent
+ * measurements), enabling warm starts with {@link #setWarmStart(boolean)} makes each fit start from
+ * the previous fit's solution, which is usually only a few iterations away from the new one.
+ *
+ * <p>Unlike {@link Model#build(List)}, a fit which runs out of iterations or time before converging
+ * doesn't throw an exception, but returns the best model it found. Use {@link #isConverged()} to
+ * check whether or not the most recent fit converged, or {@link #result()} for more detailed
+ * diagnostics.
+ *
+ * <p>Instances are not thread-safe, and should be confined to a single thread.
+ */
+public final class ModelFitter {
+
+  private final FitOptions options;
+  private final LevenbergMarquardt lm = new LevenbergMarquardt();
+  private final Residuals residuals = new Residuals();
+  private final ProjectedResiduals projected = new ProjectedResiduals();
+  private final double[] initial = new double[3];
+  private final double[] covariance = new double[9];
+  private double[] concurrency = new double[0];
+  private double[] throughput = new double[0];
+  private boolean warmStart;
+  private boolean converged;
+  private Model previous;
+  private int measurements;
+  private double totalSumOfSquares;
+  private long elapsedNanos;
+
+  /** Creates a fitter with the {@link FitOptions#defaults() default options}. */
+  public ModelFitter() {
+    this(FitOptions.defaults());
+  }
+
+  /**
+   * Creates a fitter with the given options.
+   *
+   * @param options the iteration budget, tolerances, and deadline for each fit
+   */
+  public ModelFitter(FitOptions options) {
+    this.options = Objects.requireNonNull(options);
+  }
+
+  /**
+   * Sets whether or not fits without an explicit initial guess should start from the solution of
+   * the previous fit.
+   *
+   * @param warmStart whether or not to warm-start fits
+   */
+  public void setWarmStart(boolean warmStart) {
+    this.warmStart = warmStart;
+  }
+
+  /**
+   * Whether or not the most recent fit converged.
+   *
+   * @return {@code true} if the most recent fit converged, {@code false} if it ran out of
+   *     iterations or time
+   */
+  public boolean isConverged() {
+    return converged;
+  }
+
+  // (JᵀJ)⁻¹ at the most recently fit model, for callers which need more than its standard errors
+  boolean inverseHessian(double[] inverse) {
+    return previous != null && lm.inverseHessian(3, inverse);
+  }
+
+  /**
+   * Returns the result of the most recent fit, along with diagnostics about it.
+   *
+   * <p>The standard errors of the parameters are estimated from the covariance matrix {@code
+   * s²(JᵀJ)⁻¹}, where {@code s²} is the residual sum of squares divided by the degrees of freedom.
+   *
+   * @return a {@link FitResult} instance
+   * @throws IllegalStateException if no models have been fit
+   */
+  public FitResult result() {
+    if (previous == null) {
+      throw new IllegalStateException("No models have been fit");
+    }
+    return FitResult.of(
+        previous, converged, lm, measurements, totalSumOfSquares, elapsedNanos, covariance);
+  }
+
+  /**
+   * Given a collection of measurements, fits a {@link Model}.
+   *
+   * @param measurements a collection of measurements
+   * @return a {@link Model} instance
+   * @see Model#build(List)
+   */
+  public Model fit(List<Measurement> measurements) {
+    return fit(measurements, warmStart ? previous : null);
+  }
+
+  /**
+   * Given a collection of measurements and an initial guess, fits a {@link Model}.
+   *
+   * @param measurements a collection of measurements
+   * @param initialGuess a model whose parameters are close to the expected solution, or {@code
+   *     null} to make a guess from the measurements
+   * @return a {@link Model} instance
+   * @see Model#build(List, Model)
+   */
+  public Model fit(List<Measurement> measurements, Model initialGuess) {
+    final int size = measurements.size();
+    if (concurrency.length < size) {
+      this.concurrency = new double[size];
+      this.throughput = new double[size];
+    }
+    int i = 0;
+    for (Measurement m : measurements) {
+      concurrency[i] = m.concurrency();
+      throughput[i] = m.throughput();
+      i++;
+    }
+    return fit(concurrency, throughput, 0, i, initialGuess);
+  }
+
+  /**
+   * Given parallel arrays of concurrency and throughput measurements, fits a {@link Model}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @return a {@link Model} instance
+   * @see Model#build(double[], double[])
+   */
+  public Model fit(double[] concurrency, double[] throughput) {
+    if (concurrency.length != throughput.length) {
+      throw new IllegalArgumentException("Needs the same number of concurrency/throughput values");
+    }
+    return fit(concurrency, throughput, 0, concurrency.length);
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements, fits a {@link
+   * Model}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @return a {@link Model} instance
+   * @see Model#build(double[], double[], int, int)
+   */
+  public Model fit(double[] concurrency, double[] throughput, int offset, int length) {
+    return fit(concurrency, throughput, offset, length, warmStart ? previous : null);
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements and an initial
+   * guess, fits a {@link Model}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @param initialGuess a model whose parameters are close to the expected solution, or {@code
+   *     null} to make a guess from the measurements
+   * @return a {@link Model} instance
+   */
+  public Model fit(
+      double[] concurrency, double[] throughput, int offset, int length, Model initialGuess) {
+    final long start = System.nanoTime();
+    Model.checkSlice(concurrency, throughput, offset, length);
+    residuals.reset(concurrency, throughput, offset, length);
+    try {
+      if (initialGuess == null || !residuals.guess(initialGuess, initial)) {
+        residuals.guess(initial);
+      }
+
+      // run iterations until we converge or get bored
+      if (options.variableProjection()) {
+        projected.reset(concurrency, throughput, offset, length);
+        this.converged = projected.solve(lm, residuals, initial, options, null);
+      } else {
+        this.converged = lm.solve(residuals, initial, options);
+      }
+      if (!Double.isFinite(lm.cost())) {
+        this.previous = null;
+        throw new IllegalArgumentException("Unable to build a model for these values");
+      }
+      this.previous = new Model(lm.parameter(0), lm.parameter(1), lm.parameter(2));
+      this.measurements = length;
+      this.totalSumOfSquares = residuals.totalSumOfSquares();
+      this.elapsedNanos = System.nanoTime() - start;
+      return previous;
+    } finally {
+      // don't hold on to the caller's measurements
+      residuals.reset(null, null, 0, 0);
+      projected.reset(null, null, 0, 0);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.pow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fitter of {@link Model} instances which runs the solver from many starting points in parallel
+ * and keeps the best result.
+ *
+ * <p>With noisy measurements, a single starting point can lead the solver to a poor local minimum.
+ * This fitter starts one fit from the same guess as {@link Model#build(List)}, plus more from a
+ * Latin hypercube sample of σ in {@code [0, 1]}, κ in {@code [1e-6, 1e-1]}, and λ within a factor
+ * of two of its initial guess. The starts run in parallel on a {@link ForkJoinPool}, and the one
+ * with the lowest residual sum of squares wins.
+ *
+ * <p>All of the starts run at once, so with enough cores a fit takes little longer than the
+ * slowest single start. Any start other than the initial guess whose residual sum of squares is
+ * still more than twice the initial guess's after ten iterations is abandoned, so that the extra
+ * starts spend their time on promising candidates instead of chasing hopeless ones. The cutoff is
+ * the cost of the guess itself rather than of the best start so far, which would prune more but
+ * would make the result depend on which starts happened to finish first.
+ *
+ * <p>The sample is drawn from a fixed seed, so fitting the same measurements always produces the
+ * same model, unless {@link FitOptions#deadline() a deadline} cuts the fits short. Instances are
+ * thread-safe.
+ */
+public final class MultiStartFitter {
+
+  private static final long SEED = 0x5eedL;
+  private static final int MIN_ITERATIONS = 10;
+  private static final double LOSING_FACTOR = 2;
+  private static final double MIN_KAPPA = 1e-6;
+  private static final double KAPPA_DECADES = 5;
+
+  private final int starts;
+  private final FitOptions options;
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a fitter with the given number of starts, the {@link FitOptions#defaults() default
+   * options}, and the {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * @param starts the number of starting points to fit from
+   */
+  public MultiStartFitter(int starts) {
+    this(starts, FitOptions.defaults(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a fitter with the given number of starts, options, and pool.
+   *
+   * @param starts the number of starting points to fit from
+   * @param options the iteration budget, tolerances, and deadline for each start
+   * @param pool the pool on which to run the starts
+   */
+  public MultiStartFitter(int starts, FitOptions options, ForkJoinPool pool) {
+    if (starts < 1) {
+      throw new IllegalArgumentException("Needs at least one start");
+    }
+    this.starts = starts;
+    this.options = Objects.requireNonNull(options);
+    this.pool = Objects.requireNonNull(pool);
+  }
+
+  /**
+   * Given a collection of measurements, fits a {@link Model}.
+   *
+   * @param measurements a collection of measurements
+   * @return the result of the best start
+   * @throws IllegalArgumentException if no start could fit a model
+   */
+  public FitResult fit(List<Measurement> measurements) {
+    final double[] concurrency = new double[measurements.size()];
+    final double[] throughput = new double[measurements.size()];
+    int i = 0;
+    for (Measurement m : measurements) {
+      concurrency[i] = m.concurrency();
+      throughput[i] = m.throughput();
+      i++;
+    }
+    return fit(concurrency, throughput, 0, i);
+  }
+
+  /**
+   * Given a slice of parallel arrays of concurrency and throughput measurements, fits a {@link
+   * Model}.
+   *
+   * @param concurrency the number of concurrent workers for each measurement
+   * @param throughput the throughput for each measurement
+   * @param offset the index of the first measurement in the slice
+   * @param length the number of measurements in the slice
+   * @return the result of the best start
+   * @throws IllegalArgumentException if no start could fit a model
+   */
+  public FitResult fit(double[] concurrency, double[] throughput, int offset, int length) {
+    final long start = System.nanoTime();
+    Model.checkSlice(concurrency, throughput, offset, length);
+
+    final Residuals residuals = new Residuals();
+    residuals.reset(concurrency, throughput, offset, length);
+    final double[] guess = new double[3];
+    residuals.guess(guess);
+
+    // the cutoff is fixed before any start runs, so the result doesn't depend on their timing
+    final double cutoff = residuals.sumOfSquares(guess);
+    final List<Start> tasks = new ArrayList<>(starts);
+    tasks.add(new Start(concurrency, throughput, offset, length, guess, Double.POSITIVE_INFINITY));
+    for (double[] initial : sample(starts - 1, guess[2])) {
+      tasks.add(new Start(concurrency, throughput, offset, length, initial, cutoff));
+    }
+    pool.invoke(
+        new RecursiveAction() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        });
+
+    Start winner = null;
+    for (Start task : tasks) {
+      if (Double.isFinite(task.lm.cost()) && (winner == null || task.beats(winner))) {
+        winner = task;
+      }
+    }
+    if (winner == null) {
+      throw new IllegalArgumentException("Unable to build a model for these values");
+    }
+    final Model model =
+        new Model(winner.lm.parameter(0), winner.lm.parameter(1), winner.lm.parameter(2));
+    return FitResult.of(
+        model,
+        winner.converged,
+        winner.lm,
+        length,
+        residuals.totalSumOfSquares(),
+        System.nanoTime() - start,
+        new double[9]);
+  }
+
+  // draws a Latin hypercube sample of n starting points
+  private static double[][] sample(int n, double lambda) {
+    final SplittableRandom random = new SplittableRandom(SEED);
+    final double[][] points = new double[n][3];
+    for (int d = 0; d < 3; d++) {
+      // shuffle the strata for this dimension, then pick a random point in each
+      final int[] strata = new int[n];
+      for (int i = 0; i < n; i++) {
+        strata[i] = i;
+      }
+      for (int i = n - 1; i > 0; i--) {
+        final int j = random.nextInt(i + 1);
+        final int t = strata[i];
+        strata[i] = strata[j];
+        strata[j] = t;
+      }
+      for (int i = 0; i < n; i++) {
+        final double u = (strata[i] + random.nextDouble()) / n;
+        switch (d) {
+          case 0:
+            points[i][0] = u;
+            break;
+          case 1:
+            points[i][1] = MIN_KAPPA * pow(10, KAPPA_DECADES * u);
+            break;
+          default:
+            points[i][2] = lambda * pow(2, (2 * u) - 1);
+            break;
+        }
+      }
+    }
+    return points;
+  }
+
+  private final class Start extends RecursiveAction implements LevenbergMarquardt.Cutoff {
+    private static final long serialVersionUID = 1L;
+
+    private final transient LevenbergMarquardt lm = new LevenbergMarquardt();
+    private final transient Residuals residuals = new Residuals();
+    private final transient ProjectedResiduals projected = new ProjectedResiduals();
+    private final double[] initial;
+    private final double cutoff;
+    private boolean converged;
+
+    private Start(
+        double[] concurrency,
+        double[] throughput,
+        int offset,
+        int length,
+        double[] initial,
+        double cutoff) {
+      this.initial = initial;
+      this.cutoff = cutoff;
+      residuals.reset(concurrency, throughput, offset, length);
+      if (options.variableProjection()) {
+        projected.reset(concurrency, throughput, offset, length);
+      }
+    }
+
+    @Override
+    protected void compute() {
+      this.converged =
+          options.variableProjection()
+              ? projected.solve(lm, residuals, initial, options, this)
+              : lm.solve(residuals, initial, options, this);
+      residuals.reset(null, null, 0, 0);
+      projected.reset(null, null, 0, 0);
+    }
+
+    @Override
+    public boolean test(int iterations, double cost) {
+      return iterations >= MIN_ITERATIONS && cost > LOSING_FACTOR * cutoff;
+    }
+
+    // prefers lower costs, with converged starts breaking ties
+    private boolean beats(Start other) {
+      final int c = Double.compare(lm.cost(), other.lm.cost());
+      return c < 0 || (c == 0 && converged && !other.converged);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+/**
+ * A recursive estimator of a {@link Model}'s parameters, which updates them with each new
+ * measurement in constant time and memory.
+ *
+ * <p>This is an extended recursive least-squares filter: each measurement linearizes the USL
+ * around the current parameters and updates them, and their covariance, by the resulting gain. To
+ * keep the filter well-conditioned, it works on parameters scaled relative to the initial model.
+ *
+ * <p>A forgetting factor {@code φ} below {@code 1} discounts each older measurement by a further
+ * factor of {@code φ}, so that the estimate tracks changes in the system (e.g. after a deploy). The
+ * estimate's memory is roughly {@code 1/(1-φ)} measurements, so {@code 0.999} remembers about the
+ * last thousand. A forgetting factor of {@code 1} weights all measurements equally.
+ *
+ * <p>The initial model is only a starting point: the filter starts with a diffuse covariance, so
+ * it carries no more weight than a handful of measurements. As with any recursive estimator,
+ * though, it linearizes around its current estimate, so a starting point which is far from the
+ * truth (e.g. several times the true {@code κ}) can still leave it biased. The result of {@link
+ * Model#build(java.util.List)} on an initial batch of measurements is a good starting point.
+ * Instances are not thread-safe.
+ */
+public final class OnlineEstimator {
+
+  // the initial covariance of the scaled parameters, relative to the measurement noise; this is
+  // diffuse, so that the initial model doesn't bias the estimate once measurements arrive
+  private static final double INITIAL_COVARIANCE = 1e2;
+
+  // the largest change to any scaled parameter in a single update, which keeps the first few,
+  // poorly-determined updates from throwing the estimate far from the initial model
+  private static final double MAX_STEP = 0.5;
+
+  private final double forgettingFactor;
+  private final double[] scale = new double[3];
+  private final double[] params = new double[3];
+  private final double[] p = new double[9];
+  private final double[] h = new double[3];
+  private final double[] ph = new double[3];
+  private double weightedSquares;
+  private double weight;
+  private long count;
+
+  /**
+   * Creates an estimator which starts from the given model.
+   *
+   * @param initial the initial model
+   * @param forgettingFactor the factor, in {@code (0, 1]}, by which older measurements are
+   *     discounted
+   */
+  public OnlineEstimator(Model initial, double forgettingFactor) {
+    if (!(forgettingFactor > 0 && forgettingFactor <= 1)) {
+      throw new IllegalArgumentException("forgettingFactor must be in (0, 1]");
+    }
+    if (!(initial.lambda() > 0)) {
+      throw new IllegalArgumentException("Initial model must have a positive lambda");
+    }
+    this.forgettingFactor = forgettingFactor;
+    scale[0] = max(abs(initial.sigma()), 0.01);
+    scale[1] = max(abs(initial.kappa()), 0.0001);
+    scale[2] = initial.lambda();
+    params[0] = initial.sigma() / scale[0];
+    params[1] = initial.kappa() / scale[1];
+    params[2] = 1;
+    for (int i = 0; i < 3; i++) {
+      p[i * 3 + i] = INITIAL_COVARIANCE;
+    }
+  }
+
+  /**
+   * Updates the estimate with a measurement.
+   *
+   * @param measurement a measurement
+   * @return whether or not the measurement was used
+   */
+  public boolean update(Measurement measurement) {
+    return update(measurement.concurrency(), measurement.throughput());
+  }
+
+  /**
+   * Updates the estimate with a measurement.
+   *
+   * <p>A measurement at which the current model has a pole, or which would make the estimate
+   * non-finite, is ignored.
+   *
+   * @param concurrency the number of concurrent workers
+   * @param throughput the throughput of requests
+   * @return whether or not the measurement was used
+   */
+  public boolean update(double concurrency, double throughput) {
+    final double n = concurrency;
+    final double sigma = params[0] * scale[0];
+    final double kappa = params[1] * scale[1];
+    final double lambda = params[2] * scale[2];
+    final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+    if (!(d > 0)) {
+      return false;
+    }
+
+    // linearize the model, measured relative to λ, around the current parameters
+    final double y = throughput / scale[2];
+    final double e = y - ((params[2] * n) / d);
+    h[0] = -(lambda * n * (n - 1)) / (d * d) * scale[0] / scale[2];
+    h[1] = h[0] * n * scale[1] / scale[0];
+    h[2] = n / d;
+
+    // gain = Ph / (φ + hᵀPh)
+    double s = forgettingFactor;
+    for (int i = 0; i < 3; i++) {
+      ph[i] = (p[i * 3] * h[0]) + (p[i * 3 + 1] * h[1]) + (p[i * 3 + 2] * h[2]);
+      s += h[i] * ph[i];
+    }
+    if (!(s > 0) || !Double.isFinite(e)) {
+      return false;
+    }
+
+    // θ += gain·e, limited to MAX_STEP, and P = (P - gain·(Ph)ᵀ) / φ
+    double step = 1;
+    for (int i = 0; i < 3; i++) {
+      step = min(step, MAX_STEP / abs(ph[i] / s * e));
+    }
+    for (int i = 0; i < 3; i++) {
+      params[i] += step * ph[i] / s * e;
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        p[i * 3 + j] = (p[i * 3 + j] - (ph[i] * ph[j] / s)) / forgettingFactor;
+      }
+    }
+
+    this.weightedSquares = (forgettingFactor * weightedSquares) + (e * e);
+    this.weight = (forgettingFactor * weight) + 1;
+    this.count++;
+    return true;
+  }
+
+  /**
+   * The number of measurements used so far.
+   *
+   * @return the number of measurements
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * The current estimate.
+   *
+   * @return a {@link Model} instance
+   */
+  public Model model() {
+    return new Model(params[0] * scale[0], params[1] * scale[1], params[2] * scale[2]);
+  }
+
+  /**
+   * The estimated standard error of the current estimate's coefficient of contention.
+   *
+   * @return the standard error of {@code σ}, or {@code NaN} if no measurements have been used
+   */
+  public double sigmaStandardError() {
+    return standardError(0);
+  }
+
+  /**
+   * The estimated standard error of the current estimate's coefficient of crosstalk/coherency.
+   *
+   * @return the standard error of {@code κ}, or {@code NaN} if no measurements have been used
+   */
+  public double kappaStandardError() {
+    return standardError(1);
+  }
+
+  /**
+   * The estimated standard error of the current estimate's coefficient of performance.
+   *
+   * @return the standard error of {@code λ}, or {@code NaN} if no measurements have been used
+   */
+  public double lambdaStandardError() {
+    return standardError(2);
+  }
+
+  // P is relative to the noise variance, which is estimated from the weighted squared errors
+  private double standardError(int i) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    return sqrt(weightedSquares / weight * p[i * 3 + i]) * scale[i];
+  }
+}
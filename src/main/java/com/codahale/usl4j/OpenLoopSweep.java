@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator which measures a task's throughput and latency at increasing
+ * constant arrival rates.
+ *
+ * <p>Unlike a {@link LoadSweep}, which only starts a call when a previous one finishes, an
+ * open-loop sweep schedules calls at fixed intervals, whether or not earlier calls have finished.
+ * The schedule is split between a fixed number of workers: at a rate of {@code X} calls per second,
+ * worker {@code k} of {@code W} makes calls {@code k}, {@code k+W}, {@code k+2W}, etc., each at its
+ * intended time of {@code i/X} seconds after the start. A worker which falls behind doesn't skip
+ * calls, but makes them as fast as it can until it catches up.
+ *
+ * <p>Each call's latency is measured from its intended start time, not from when the worker got
+ * around to making it. This corrects for coordinated omission: a closed-loop generator stops
+ * sending requests while the system is stalled, and so under-reports the latency a constant stream
+ * of requests would have seen. Once the system saturates, the corrected latency grows with the
+ * backlog.
+ *
+ * <p>The measurement period covers the calls whose intended start times fall within it, including
+ * those which only finish after it ends, so a backlog can't hide the latency of its last calls.
+ * Throughput is the number of those calls divided by the time from the start of the period until
+ * the end of the period or the last of them finishes, whichever is later.
+ *
+ * <p>The workers share nothing while running, so a single JVM can schedule well over a million
+ * calls per second, given enough workers to cover the calls in flight: each worker can only have
+ * one call in flight at a time, so {@code W} should be well above the expected throughput
+ * multiplied by the expected latency. By default, the workers are virtual threads if the runtime
+ * supports them, which makes thousands of workers cheap.
+ */
+public final class OpenLoopSweep {
+
+  // the fraction by which throughput must fall below its peak to count as retrograde
+  private static final double RETROGRADE = 0.05;
+
+  // waits shorter than this are spun rather than parked, since parking overshoots
+  private static final long SPIN_NANOS = 20_000;
+
+  private final Callable<?> task;
+  private final int workers;
+  private final Duration warmup;
+  private final Duration duration;
+  private final ThreadFactory threadFactory;
+
+  /**
+   * Creates a sweep of the given task, with a warmup period of one second and a measurement period
+   * of five seconds at each rate.
+   *
+   * @param task the task to call
+   * @param workers the number of workers, each of which can have one call in flight at a time
+   */
+  public OpenLoopSweep(Callable<?> task, int workers) {
+    this(
+        task,
+        workers,
+        Duration.ofSeconds(1),
+        Duration.ofSeconds(5),
+        LoadSweep.defaultThreadFactory());
+  }
+
+  private OpenLoopSweep(
+      Callable<?> task,
+      int workers,
+      Duration warmup,
+      Duration duration,
+      ThreadFactory threadFactory) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("workers must be positive");
+    }
+    this.task = Objects.requireNonNull(task);
+    this.workers = workers;
+    this.warmup = Objects.requireNonNull(warmup);
+    this.duration = Objects.requireNonNull(duration);
+    this.threadFactory = Objects.requireNonNull(threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep with the given warmup period.
+   *
+   * @param warmup the time to run the task at each rate before measuring it
+   * @return a new {@link OpenLoopSweep}
+   */
+  public OpenLoopSweep withWarmup(Duration warmup) {
+    if (warmup.isNegative()) {
+      throw new IllegalArgumentException("warmup must not be negative");
+    }
+    return new OpenLoopSweep(task, workers, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep with the given measurement period.
+   *
+   * @param duration the time to measure the task at each rate
+   * @return a new {@link OpenLoopSweep}
+   */
+  public OpenLoopSweep withDuration(Duration duration) {
+    if (duration.isNegative() || duration.isZero()) {
+      throw new IllegalArgumentException("duration must be positive");
+    }
+    return new OpenLoopSweep(task, workers, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Returns a copy of this sweep which creates its workers with the given factory.
+   *
+   * @param threadFactory the factory for the workers' threads
+   * @return a new {@link OpenLoopSweep}
+   */
+  public OpenLoopSweep withThreadFactory(ThreadFactory threadFactory) {
+    return new OpenLoopSweep(task, workers, warmup, duration, threadFactory);
+  }
+
+  /**
+   * Measures the task at each rate from {@code from} to {@code to}, in steps of {@code step}, until
+   * the throughput falls more than 5% below the highest throughput seen so far, indicating that the
+   * system has entered its retrograde region.
+   *
+   * @param from the first rate, in calls per second
+   * @param step the increase in rate between steps, in calls per second
+   * @param to the highest rate, in calls per second
+   * @return a {@link Measurement} for each rate, including the first retrograde one
+   * @throws ExecutionException if the task throws an exception or error
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public List<Measurement> run(double from, double step, double to)
+      throws ExecutionException, InterruptedException {
+    if (!(from > 0) || !(step > 0) || !(to >= from)) {
+      throw new IllegalArgumentException("Rates must be positive and in order");
+    }
+    final List<Measurement> measurements = new ArrayList<>();
+    double peak = 0;
+    for (int i = 0; from + (i * step) <= to; i++) {
+      final Measurement m = measure(from + (i * step));
+      measurements.add(m);
+      if (m.throughput() < peak * (1 - RETROGRADE)) {
+        break;
+      }
+      peak = Math.max(peak, m.throughput());
+    }
+    return measurements;
+  }
+
+  /**
+   * Measures the task at the given arrival rate.
+   *
+   * @param rate the rate at which to call the task, in calls per second
+   * @return a {@link Measurement} of the task's throughput and latency, measured from each call's
+   *     intended start time
+   * @throws ExecutionException if the task throws an exception or error
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public Measurement measure(double rate) throws ExecutionException, InterruptedException {
+    if (!(rate > 0)) {
+      throw new IllegalArgumentException("rate must be positive");
+    }
+
+    final long origin = System.nanoTime();
+    final long start = origin + FitOptions.saturatedNanos(warmup);
+    final long end = start + FitOptions.saturatedNanos(duration);
+    final double interval = 1e9 / rate;
+    final Worker[] ws = new Worker[workers];
+    final Thread[] threads = new Thread[workers];
+    for (int k = 0; k < workers; k++) {
+      ws[k] = new Worker(task, origin, start, end, interval, k, workers);
+    }
+
+    long count = 0;
+    long latency = 0;
+    long finish = end;
+    try {
+      for (int k = 0; k < workers; k++) {
+        threads[k] = threadFactory.newThread(ws[k]);
+      }
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (int k = 0; k < workers; k++) {
+        threads[k].join();
+        if (ws[k].failure != null) {
+          throw new ExecutionException(ws[k].failure);
+        }
+        count += ws[k].count;
+        latency += ws[k].latency;
+        finish = Math.max(finish, ws[k].finish);
+      }
+    } finally {
+      for (Worker w : ws) {
+        w.stopped = true;
+      }
+      LoadSweep.joinAll(threads);
+    }
+
+    if (count == 0) {
+      throw new IllegalStateException("No calls finished during the measurement period");
+    }
+    final double seconds = (finish - start) / 1e9;
+    return Measurement.ofThroughput().andLatency(count / seconds, latency / 1e9 / count);
+  }
+
+  private static final class Worker implements Runnable {
+    private final Callable<?> task;
+    private final long origin;
+    private final long start;
+    private final long end;
+    private final double interval;
+    private final long first;
+    private final long stride;
+    private volatile boolean stopped;
+    private long count;
+    private long latency;
+    private long finish;
+    private Throwable failure;
+
+    private Worker(
+        Callable<?> task,
+        long origin,
+        long start,
+        long end,
+        double interval,
+        long first,
+        long stride) {
+      this.task = task;
+      this.origin = origin;
+      this.start = start;
+      this.end = end;
+      this.interval = interval;
+      this.first = first;
+      this.stride = stride;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (long i = first; !stopped; i += stride) {
+          // calculate each intended time from the origin, so that rounding errors don't accumulate
+          final long intended = origin + (long) (i * interval);
+          if (intended >= end) {
+            return;
+          }
+          long now = System.nanoTime();
+          while (now < intended) {
+            final long wait = intended - now;
+            if (wait > SPIN_NANOS) {
+              LockSupport.parkNanos(wait - SPIN_NANOS);
+            } else {
+              Thread.yield();
+            }
+            now = System.nanoTime();
+          }
+          task.call();
+          // count each call in the period it was meant to start in, however late it finishes
+          if (intended >= start) {
+            final long t = System.nanoTime();
+            count++;
+            latency += t - intended;
+            finish = t;
+          }
+        }
+      } catch (Throwable t) {
+        // errors too, e.g. a failed assertion, so the sweep fails rather than under-counting
+        this.failure = t;
+      }
+    }
+  }
+}
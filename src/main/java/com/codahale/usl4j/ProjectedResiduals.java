@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+/**
+ * The residuals of a set of concurrency/throughput measurements, given only the parameters σ and κ
+ * of a model, with λ eliminated by variable projection.
+ *
+ * <p>For fixed σ and κ, the modeled throughput {@code λf}, where {@code f = N/d} and {@code d =
+ * 1+σ(N-1)+κN(N-1)}, is linear in λ, so the best λ is {@code Σxf/Σf²}. Substituting it back leaves
+ * a two-parameter problem. Its Jacobian includes the change in the best λ with σ and κ, which makes
+ * it exact rather than an approximation.
+ */
+final class ProjectedResiduals implements LevenbergMarquardt.Problem {
+
+  private final double[] solution = new double[3];
+  private double[] concurrency;
+  private double[] throughput;
+  private int offset;
+  private int length;
+
+  /**
+   * Points the residuals at a new set of measurements.
+   *
+   * @param concurrency the concurrency of each measurement
+   * @param throughput the throughput of each measurement
+   * @param offset the index of the first measurement
+   * @param length the number of measurements
+   */
+  void reset(double[] concurrency, double[] throughput, int offset, int length) {
+    this.concurrency = concurrency;
+    this.throughput = throughput;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Solves for σ and κ, then leaves the solver holding the solution of the full problem, so that
+   * its parameters and covariance are those of all three parameters.
+   *
+   * @param lm the solver
+   * @param residuals the full problem, pointed at the same measurements
+   * @param initial the initial guess for σ, κ, and λ; λ is ignored
+   * @param options the iteration budget, tolerances, and deadline
+   * @param cutoff a check run before each iteration, or {@code null}
+   * @return whether or not the solver converged
+   */
+  boolean solve(
+      LevenbergMarquardt lm,
+      Residuals residuals,
+      double[] initial,
+      FitOptions options,
+      LevenbergMarquardt.Cutoff cutoff) {
+    final boolean converged = lm.solve(this, initial, options, cutoff);
+    solution[0] = lm.parameter(0);
+    solution[1] = lm.parameter(1);
+    solution[2] = lambda(solution[0], solution[1]);
+    lm.evaluate(residuals, solution);
+    return converged;
+  }
+
+  /**
+   * Calculates the best λ for the given σ and κ.
+   *
+   * @param sigma the coefficient of contention
+   * @param kappa the coefficient of crosstalk/coherency
+   * @return {@code Σxf/Σf²}
+   */
+  double lambda(double sigma, double kappa) {
+    double xf = 0;
+    double ff = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double n = concurrency[i];
+      final double f = n / (1 + (sigma * (n - 1)) + (kappa * n * (n - 1)));
+      xf += throughput[i] * f;
+      ff += f * f;
+    }
+    return xf / ff;
+  }
+
+  @Override
+  public int parameters() {
+    return 2;
+  }
+
+  @Override
+  public double evaluate(double[] params, double[] gradient, double[] hessian) {
+    final double sigma = params[0];
+    final double kappa = params[1];
+    final double[] c = concurrency;
+    final double[] t = throughput;
+
+    // find the best λ, then accumulate the residuals and the sums needed for its derivatives
+    final double lambda = lambda(sigma, kappa);
+    double ff = 0;
+    double sse = 0;
+    double fr = 0;
+    double ar = 0;
+    double br = 0;
+    double af = 0;
+    double bf = 0;
+    double aa = 0;
+    double ab = 0;
+    double bb = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double n = c[i];
+      final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+      final double f = n / d;
+      final double a = -(n * (n - 1)) / (d * d); // ∂f/∂σ
+      final double b = a * n; // ∂f/∂κ
+      final double r = t[i] - (lambda * f);
+      ff += f * f;
+      sse += r * r;
+      fr += f * r;
+      ar += a * r;
+      br += b * r;
+      af += a * f;
+      bf += b * f;
+      aa += a * a;
+      ab += a * b;
+      bb += b * b;
+    }
+
+    // the derivatives of the best λ, and the Jacobian columns -(λ∂f + f∂λ)
+    final double ls = (ar - (lambda * af)) / ff;
+    final double lk = (br - (lambda * bf)) / ff;
+    gradient[0] = -((lambda * ar) + (ls * fr));
+    gradient[1] = -((lambda * br) + (lk * fr));
+    hessian[0] = (lambda * lambda * aa) + (2 * lambda * ls * af) + (ls * ls * ff);
+    hessian[1] = (lambda * lambda * ab) + (lambda * lk * af) + (lambda * ls * bf) + (ls * lk * ff);
+    hessian[2] = hessian[1];
+    hessian[3] = (lambda * lambda * bb) + (2 * lambda * lk * bf) + (lk * lk * ff);
+    return sse;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import static java.lang.Math.max;
+
+/**
+ * The residuals of a set of concurrency/throughput measurements, given the parameters σ, κ, and λ
+ * of a model.
+ *
+ * <p>Given {@code d = 1+σ(N-1)+κN(N-1)}, the partial derivatives of each residual {@code X-λN/d}
+ * are {@code λN(N-1)/d²} for σ, {@code λN²(N-1)/d²} for κ, and {@code -N/d} for λ.
+ */
+final class Residuals implements LevenbergMarquardt.Problem {
+
+  private double[] concurrency;
+  private double[] throughput;
+  private int offset;
+  private int length;
+
+  /**
+   * Points the residuals at a new set of measurements.
+   *
+   * @param concurrency the concurrency of each measurement
+   * @param throughput the throughput of each measurement
+   * @param offset the index of the first measurement
+   * @param length the number of measurements
+   */
+  void reset(double[] concurrency, double[] throughput, int offset, int length) {
+    this.concurrency = concurrency;
+    this.throughput = throughput;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * The sum of the squared deviations of the measured throughput from its mean.
+   *
+   * @return {@code SST}
+   */
+  double totalSumOfSquares() {
+    double mean = 0;
+    for (int i = offset; i < offset + length; i++) {
+      mean += throughput[i];
+    }
+    mean /= length;
+
+    double sst = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double d = throughput[i] - mean;
+      sst += d * d;
+    }
+    return sst;
+  }
+
+  /**
+   * Makes an initial guess at the parameters of a model for the measurements.
+   *
+   * <p>The {@link Linearized} estimate is usually very close to the optimum, but as it can produce
+   * a negative κ, it occasionally puts a pole in the middle of the measurements. If so, a fixed
+   * guess of {@code σ=0.1} and {@code κ=0.01}, with λ estimated from the most efficient
+   * measurement, is used instead.
+   *
+   * @param params an array which will be filled with σ, κ, and λ
+   */
+  void guess(double[] params) {
+    double l = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (concurrency[i] > 0) {
+        l = max(l, throughput[i] / concurrency[i]);
+      }
+    }
+    final double sigma = 0.1;
+    final double kappa = 0.01;
+
+    if (Linearized.estimate(concurrency, throughput, offset, length, params)
+        && sumOfSquares(params[0], params[1], params[2]) <= sumOfSquares(sigma, kappa, l)) {
+      return;
+    }
+    params[0] = sigma;
+    params[1] = kappa;
+    params[2] = l;
+  }
+
+  /**
+   * Uses the parameters of an existing model as the initial guess, if they're usable.
+   *
+   * @param model a model whose parameters are close to the expected solution
+   * @param params an array which will be filled with σ, κ, and λ
+   * @return whether or not the model's parameters produce finite residuals for the measurements
+   */
+  boolean guess(Model model, double[] params) {
+    if (!Double.isFinite(sumOfSquares(model.sigma(), model.kappa(), model.lambda()))) {
+      return false;
+    }
+    params[0] = model.sigma();
+    params[1] = model.kappa();
+    params[2] = model.lambda();
+    return true;
+  }
+
+  /**
+   * The residual sum of squares of a model with the given parameters.
+   *
+   * @param params σ, κ, and λ
+   * @return {@code SSE}
+   */
+  double sumOfSquares(double[] params) {
+    return sumOfSquares(params[0], params[1], params[2]);
+  }
+
+  private double sumOfSquares(double sigma, double kappa, double lambda) {
+    double sse = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double n = concurrency[i];
+      final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+      final double r = throughput[i] - (lambda * n) / d;
+      sse += r * r;
+    }
+    return sse;
+  }
+
+  @Override
+  public int parameters() {
+    return 3;
+  }
+
+  @Override
+  public double evaluate(double[] params, double[] gradient, double[] hessian) {
+    final double sigma = params[0];
+    final double kappa = params[1];
+    final double lambda = params[2];
+    final double[] c = concurrency;
+    final double[] t = throughput;
+    double sse = 0;
+    double g0 = 0;
+    double g1 = 0;
+    double g2 = 0;
+    double h00 = 0;
+    double h01 = 0;
+    double h02 = 0;
+    double h11 = 0;
+    double h12 = 0;
+    double h22 = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final double n = c[i];
+      final double d = 1 + (sigma * (n - 1)) + (kappa * n * (n - 1));
+      final double r = t[i] - (lambda * n) / d;
+      final double js = (lambda * n * (n - 1)) / (d * d);
+      final double jk = js * n;
+      final double jl = -n / d;
+      sse += r * r;
+      g0 += js * r;
+      g1 += jk * r;
+      g2 += jl * r;
+      h00 += js * js;
+      h01 += js * jk;
+      h02 += js * jl;
+      h11 += jk * jk;
+      h12 += jk * jl;
+      h22 += jl * jl;
+    }
+    gradient[0] = g0;
+    gradient[1] = g1;
+    gradient[2] = g2;
+    hessian[0] = h00;
+    hessian[1] = h01;
+    hessian[2] = h02;
+    hessian[3] = h01;
+    hessian[4] = h11;
+    hessian[5] = h12;
+    hessian[6] = h02;
+    hessian[7] = h12;
+    hessian[8] = h22;
+    return sse;
+  }
+}
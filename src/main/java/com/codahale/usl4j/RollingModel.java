@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Model} which keeps itself current as new measurements arrive.
+ *
+ * <p>Measurements are kept in a ring buffer of fixed capacity, and optionally only those recorded
+ * within a maximum age are used. Calling {@link #refit()}, either directly or on a schedule via
+ * {@link #schedule(ScheduledExecutorService, Duration)}, fits a new model to the current
+ * measurements, starting from the previous model, and publishes it.
+ *
+ * <p>Instances are thread-safe. Adding a measurement takes a brief lock, but readers of {@link
+ * #model()} never block, and always see the most recently published model, even while a refit is
+ * in progress.
+ */
+public final class RollingModel {
+
+  private final AtomicReference<Model> model = new AtomicReference<>();
+  private final Object fitLock = new Object();
+  private final ModelFitter fitter;
+  private final long maxAgeNanos;
+  private final double[] concurrency;
+  private final double[] throughput;
+  private final long[] timestamps;
+  private int next;
+  private int size;
+
+  // the fitter's copy of the measurements, guarded by fitLock
+  private final double[] fitConcurrency;
+  private final double[] fitThroughput;
+
+  /**
+   * Creates a rolling model which keeps the given number of the most recent measurements.
+   *
+   * @param capacity the maximum number of measurements to keep
+   */
+  public RollingModel(int capacity) {
+    this(capacity, null, FitOptions.defaults());
+  }
+
+  /**
+   * Creates a rolling model which keeps the given number of the most recent measurements, but only
+   * uses those recorded within the given maximum age.
+   *
+   * @param capacity the maximum number of measurements to keep
+   * @param maxAge the maximum age of a measurement, or {@code null} for no maximum
+   * @param options the iteration budget, tolerances, and deadline for each refit
+   */
+  public RollingModel(int capacity, Duration maxAge, FitOptions options) {
+    if (capacity < Model.MIN_MEASUREMENTS) {
+      throw new IllegalArgumentException("Needs a capacity of at least 6 measurements");
+    }
+    if (maxAge != null && (maxAge.isNegative() || maxAge.isZero())) {
+      throw new IllegalArgumentException("maxAge must be positive");
+    }
+    this.fitter = new ModelFitter(options);
+    this.maxAgeNanos = maxAge == null ? Long.MAX_VALUE : FitOptions.saturatedNanos(maxAge);
+    this.concurrency = new double[capacity];
+    this.throughput = new double[capacity];
+    this.timestamps = new long[capacity];
+    this.fitConcurrency = new double[capacity];
+    this.fitThroughput = new double[capacity];
+    fitter.setWarmStart(true);
+  }
+
+  /**
+   * Adds a measurement, replacing the oldest one if the buffer is full.
+   *
+   * @param measurement a measurement
+   */
+  public void add(Measurement measurement) {
+    add(measurement.concurrency(), measurement.throughput());
+  }
+
+  /**
+   * Adds a measurement, replacing the oldest one if the buffer is full.
+   *
+   * @param concurrency the number of concurrent workers
+   * @param throughput the throughput of requests
+   */
+  public void add(double concurrency, double throughput) {
+    final long now = System.nanoTime();
+    synchronized (this) {
+      this.concurrency[next] = concurrency;
+      this.throughput[next] = throughput;
+      this.timestamps[next] = now;
+      this.next = (next + 1) % timestamps.length;
+      this.size = Math.min(size + 1, timestamps.length);
+    }
+  }
+
+  /**
+   * The number of measurements in the buffer, including any which are older than the maximum age.
+   *
+   * @return the number of measurements
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * The most recently published model, if any.
+   *
+   * @return the current model, or empty if no refit has succeeded yet
+   */
+  public Optional<Model> model() {
+    return Optional.ofNullable(model.get());
+  }
+
+  /**
+   * Fits a new model to the current measurements and, if the fit converges, publishes it.
+   *
+   * <p>If there are too few current measurements, or the fit doesn't converge, the previously
+   * published model is kept.
+   *
+   * @return whether or not a new model was published
+   */
+  public boolean refit() {
+    synchronized (fitLock) {
+      final int n = copy();
+      if (n < Model.MIN_MEASUREMENTS) {
+        return false;
+      }
+      try {
+        final Model fitted = fitter.fit(fitConcurrency, fitThroughput, 0, n);
+        if (!fitter.isConverged()) {
+          return false;
+        }
+        model.set(fitted);
+        return true;
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Refits the model on a schedule.
+   *
+   * @param executor the executor on which to run the refits
+   * @param interval the delay between the end of one refit and the start of the next
+   * @return a {@link ScheduledFuture} which can be used to cancel the refits
+   */
+  public ScheduledFuture<?> schedule(ScheduledExecutorService executor, Duration interval) {
+    Objects.requireNonNull(executor);
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+    final long nanos = FitOptions.saturatedNanos(interval);
+    return executor.scheduleWithFixedDelay(this::refit, nanos, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  // copies the current measurements, oldest first, into the fitter's buffers
+  private synchronized int copy() {
+    final long now = System.nanoTime();
+    final int capacity = timestamps.length;
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      final int j = (next - size + i + capacity) % capacity;
+      if (now - timestamps[j] <= maxAgeNanos) {
+        fitConcurrency[n] = concurrency[j];
+        fitThroughput[n] = throughput[j];
+        n++;
+      }
+    }
+    return n;
+  }
+}
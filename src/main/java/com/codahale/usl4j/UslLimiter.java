@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A concurrency limiter which admits only as much concurrent work as a {@link Model} says the
+ * system can handle.
+ *
+ * <p>The limit is the model's {@link Model#maxConcurrency() maximum concurrency}, past which adding
+ * work only lowers throughput. If a latency SLA is given, the limit is also capped at {@link
+ * Model#concurrencyAtLatency(double) the concurrency at that latency}. Either way, it's clamped to
+ * the given minimum and maximum.
+ *
+ * <p>Admitted work is measured with a {@link ConcurrencyProbe}, and each {@link #refresh()} feeds
+ * the latest sample to an {@link OnlineEstimator}, so that the model, and the limit, follow the
+ * system as it changes. Because the limiter keeps concurrency close to the limit, most samples are
+ * from a narrow range of concurrency, so the initial model should come from a wider range of
+ * measurements, e.g. a load test.
+ *
+ * <p>{@link #tryAcquire()} and {@link #release()} are lock-free: admission is a compare-and-set on
+ * the number of permits in use. Work which can't be admitted is either rejected by {@link
+ * #tryAcquire()} or queued by {@link #acquire(long, TimeUnit)} until a permit is released or the
+ * timeout passes. Instances are thread-safe.
+ */
+public final class UslLimiter {
+
+  private final ConcurrencyProbe probe = new ConcurrencyProbe();
+  private final AtomicInteger inUse = new AtomicInteger();
+  private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+  private final OnlineEstimator estimator;
+  private final double slaSeconds;
+  private final int minLimit;
+  private final int maxLimit;
+  private volatile Model model;
+  private volatile int limit;
+
+  /**
+   * Creates a limiter which starts from the given model, with no latency SLA.
+   *
+   * @param initial the initial model
+   */
+  public UslLimiter(Model initial) {
+    this(initial, null, 0.99, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a limiter which starts from the given model.
+   *
+   * @param initial the initial model
+   * @param sla the maximum mean latency, or {@code null} for no latency SLA
+   * @param forgettingFactor the factor, in {@code (0, 1]}, by which older samples are discounted
+   * @param minLimit the minimum limit
+   * @param maxLimit the maximum limit
+   */
+  public UslLimiter(
+      Model initial, Duration sla, double forgettingFactor, int minLimit, int maxLimit) {
+    if (sla != null && (sla.isNegative() || sla.isZero())) {
+      throw new IllegalArgumentException("sla must be positive");
+    }
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("Limits must be positive and minLimit <= maxLimit");
+    }
+    this.estimator = new OnlineEstimator(initial, forgettingFactor);
+    this.slaSeconds = sla == null ? Double.NaN : sla.toNanos() / 1e9;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    publish(initial);
+  }
+
+  /**
+   * Acquires a permit if one is available.
+   *
+   * @return {@code true} if a permit was acquired, {@code false} if the limit has been reached
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      final int n = inUse.get();
+      if (n >= limit) {
+        return false;
+      }
+      if (inUse.compareAndSet(n, n + 1)) {
+        probe.start();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Acquires a permit, waiting up to the given timeout for one to become available.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of {@code timeout}
+   * @return {@code true} if a permit was acquired, {@code false} if the timeout passed first
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+    if (tryAcquire()) {
+      return true;
+    }
+
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    final Thread current = Thread.currentThread();
+    waiters.add(current);
+    try {
+      while (true) {
+        // try again after joining the queue, so that a release in between can't be missed
+        if (tryAcquire()) {
+          return true;
+        }
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    } finally {
+      waiters.remove(current);
+      // if we were woken but didn't take the permit, pass the wakeup on
+      if (inUse.get() < limit) {
+        signal();
+      }
+    }
+  }
+
+  /**
+   * Releases a permit acquired by {@link #tryAcquire()} or {@link #acquire(long, TimeUnit)}.
+   *
+   * @throws IllegalStateException if no permits are in use
+   */
+  public void release() {
+    while (true) {
+      final int n = inUse.get();
+      if (n <= 0) {
+        throw new IllegalStateException("No permits are in use");
+      }
+      if (inUse.compareAndSet(n, n - 1)) {
+        break;
+      }
+    }
+    probe.end();
+    signal();
+  }
+
+  /**
+   * The number of permits currently in use.
+   *
+   * @return the number of admitted units of work which haven't been released
+   */
+  public int inUse() {
+    return inUse.get();
+  }
+
+  /**
+   * The current limit.
+   *
+   * @return the maximum number of permits which can be in use at once
+   */
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * The model from which the current limit was derived.
+   *
+   * @return a {@link Model} instance
+   */
+  public Model model() {
+    return model;
+  }
+
+  /**
+   * Updates the model with the concurrency and throughput of the work admitted since the previous
+   * refresh, and recalculates the limit. If the work can't be measured, the current limit is kept.
+   *
+   * @return whether or not the model was updated
+   */
+  public synchronized boolean refresh() {
+    final Optional<Measurement> sample;
+    try {
+      sample = probe.sample();
+    } catch (RuntimeException e) {
+      // a scheduled refresh which throws is never run again, so keep the limit we have
+      return false;
+    }
+    return sample.map(this::update).orElse(false);
+  }
+
+  /**
+   * Updates the model with a measurement taken elsewhere, and recalculates the limit.
+   *
+   * @param measurement a measurement
+   * @return whether or not the model was updated
+   */
+  public synchronized boolean update(Measurement measurement) {
+    if (!estimator.update(measurement)) {
+      return false;
+    }
+    publish(estimator.model());
+    return true;
+  }
+
+  /**
+   * Refreshes the model on a schedule.
+   *
+   * @param executor the executor on which to run the refreshes
+   * @param interval the interval between refreshes
+   * @return a {@link ScheduledFuture} which can be used to cancel the refreshes
+   */
+  public ScheduledFuture<?> schedule(ScheduledExecutorService executor, Duration interval) {
+    Objects.requireNonNull(executor);
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+    final long nanos = FitOptions.saturatedNanos(interval);
+    return executor.scheduleAtFixedRate(this::refresh, nanos, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void publish(Model m) {
+    final int previous = limit;
+    this.model = m;
+    this.limit = m.concurrencyLimit(slaSeconds, minLimit, maxLimit);
+    // wake any waiters who can now be admitted
+    if (limit > previous) {
+      signal();
+    }
+  }
+
+  private void signal() {
+    final Thread waiter = waiters.peek();
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sizer which tunes the size of a thread pool by fitting a {@link Model} to its throughput at
+ * different sizes.
+ *
+ * <p>Each interval, the sizer is told the throughput the pool achieved at the size it chose for
+ * that interval, and chooses the size for the next one. Most intervals are spent at the pool's
+ * current home size, but every few intervals the sizer probes a nearby size, alternately above and
+ * below, so that the model has a range of concurrency to fit. After each interval at the home size,
+ * the sizer refits the model and, if the model's {@link Model#maxConcurrency() maximum
+ * concurrency} (or, given a latency SLA, the concurrency at that latency) differs from the home
+ * size by more than the hysteresis on two refits in a row, moves the home size towards it. Each
+ * move at most doubles or halves the home size, so that an early model fit to a narrow range can't
+ * send the pool far off, and a model with no coherency costs, which has no peak, doubles it (up to
+ * the concurrency at the latency SLA, if any).
+ *
+ * <p>Throughput only says something about the pool's capacity when the pool is saturated, so
+ * {@link #schedule(ThreadPoolExecutor, ScheduledExecutorService, Duration)} skips intervals in
+ * which the pool's queue was empty. It also skips the interval after each resize, since a pool
+ * only starts new threads as tasks arrive and only stops surplus ones as they finish their current
+ * tasks, so for a while after a resize it runs at neither the old size nor the new one.
+ *
+ * <p>Instances are thread-safe.
+ */
+public final class UslPoolSizer {
+
+  // the number of intervals at the home size between probes
+  private static final int PROBE_EVERY = 3;
+
+  private final RollingModel model;
+  private final int minSize;
+  private final int maxSize;
+  private final double slaSeconds;
+  private final double hysteresis;
+  private int home;
+  private int size;
+  private int intervals;
+  private int pending;
+  private boolean probeUp = true;
+
+  /**
+   * Creates a sizer with no latency SLA and a hysteresis of 10%.
+   *
+   * @param initialSize the initial pool size
+   * @param minSize the minimum pool size
+   * @param maxSize the maximum pool size
+   */
+  public UslPoolSizer(int initialSize, int minSize, int maxSize) {
+    this(initialSize, minSize, maxSize, null, 0.1);
+  }
+
+  /**
+   * Creates a sizer.
+   *
+   * @param initialSize the initial pool size
+   * @param minSize the minimum pool size
+   * @param maxSize the maximum pool size
+   * @param sla the maximum mean latency, or {@code null} for no latency SLA
+   * @param hysteresis the fraction of the home size by which the model's optimum must differ from
+   *     it before the home size is moved
+   */
+  public UslPoolSizer(
+      int initialSize, int minSize, int maxSize, Duration sla, double hysteresis) {
+    if (minSize < 1 || maxSize < minSize) {
+      throw new IllegalArgumentException("Sizes must be positive and minSize <= maxSize");
+    }
+    if (initialSize < minSize || initialSize > maxSize) {
+      throw new IllegalArgumentException("initialSize must be between minSize and maxSize");
+    }
+    if (sla != null && (sla.isNegative() || sla.isZero())) {
+      throw new IllegalArgumentException("sla must be positive");
+    }
+    if (!(hysteresis >= 0)) {
+      throw new IllegalArgumentException("hysteresis must be non-negative");
+    }
+    this.model = new RollingModel(64);
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.slaSeconds = sla == null ? Double.NaN : sla.toNanos() / 1e9;
+    this.hysteresis = hysteresis;
+    this.home = initialSize;
+    this.size = initialSize;
+  }
+
+  /**
+   * The size the pool should currently be.
+   *
+   * @return the pool size for the current interval
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * The size the pool returns to between probes.
+   *
+   * @return the home pool size
+   */
+  public synchronized int homeSize() {
+    return home;
+  }
+
+  /**
+   * The most recently fit model, if any.
+   *
+   * @return the current model, or empty if there aren't yet enough measurements to fit one
+   */
+  public Optional<Model> model() {
+    return model.model();
+  }
+
+  /**
+   * Records the throughput the pool achieved during the current interval, at {@link #size()}
+   * threads, and chooses the size for the next interval.
+   *
+   * @param throughput the throughput of the pool during the interval
+   * @return the pool size for the next interval
+   */
+  public synchronized int observe(double throughput) {
+    model.add(size, throughput);
+
+    // after a probe, return home
+    if (size != home) {
+      this.size = home;
+      return size;
+    }
+
+    if (model.refit()) {
+      move(model.model().orElseThrow(IllegalStateException::new));
+    }
+
+    // probe a nearby size every few intervals, or every interval until there's a model
+    if (++intervals >= PROBE_EVERY || !model.model().isPresent()) {
+      this.intervals = 0;
+      this.size = probe();
+    }
+    return size;
+  }
+
+  /**
+   * Resizes the given pool on a schedule.
+   *
+   * <p>Each interval, the pool's throughput is measured from its completed task count. Intervals in
+   * which the pool's queue was empty are skipped, since the pool wasn't saturated, as are intervals
+   * which follow a resize, since the pool was still settling to its new size.
+   *
+   * @param pool the pool to resize
+   * @param executor the executor on which to run the measurements
+   * @param interval the length of each interval
+   * @return a {@link ScheduledFuture} which can be used to cancel the resizing
+   */
+  public ScheduledFuture<?> schedule(
+      ThreadPoolExecutor pool, ScheduledExecutorService executor, Duration interval) {
+    Objects.requireNonNull(pool);
+    Objects.requireNonNull(executor);
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+    final long nanos = FitOptions.saturatedNanos(interval);
+    final int initial = size();
+    final boolean[] settling = {pool.getCorePoolSize() != initial};
+    resize(pool, initial);
+    final long[] last = {System.nanoTime(), pool.getCompletedTaskCount()};
+    return executor.scheduleAtFixedRate(
+        () -> {
+          final long now = System.nanoTime();
+          final long completed = pool.getCompletedTaskCount();
+          final double seconds = (now - last[0]) / 1e9;
+          final long finished = completed - last[1];
+          last[0] = now;
+          last[1] = completed;
+          if (settling[0]) {
+            settling[0] = false;
+            return;
+          }
+          if (!pool.getQueue().isEmpty() && finished > 0) {
+            final int next = observe(finished / seconds);
+            if (next != pool.getCorePoolSize()) {
+              resize(pool, next);
+              settling[0] = true;
+            }
+          }
+        },
+        nanos,
+        nanos,
+        TimeUnit.NANOSECONDS);
+  }
+
+  private void move(Model m) {
+    // a model with no coherency costs has no peak within the measurements, so look further out,
+    // but no further than the SLA allows
+    final int limit = m.concurrencyLimit(slaSeconds, minSize, maxSize);
+    final int target = m.kappa() > 0 ? limit : Math.min(limit, home * 2);
+    if (Math.abs(target - home) <= Math.max(1, hysteresis * home)) {
+      this.pending = 0;
+      return;
+    }
+
+    // only move once two refits in a row agree on the direction, so noise can't cause thrashing
+    final int direction = target > home ? 1 : -1;
+    if (pending != direction) {
+      this.pending = direction;
+      return;
+    }
+    this.pending = 0;
+    final int step = Math.max(Math.min(target, home * 2), (home + 1) / 2);
+    this.home = Math.max(minSize, Math.min(maxSize, step));
+    this.size = home;
+  }
+
+  private int probe() {
+    final int delta = Math.max(1, home / 4);
+    int probe = probeUp ? home + delta : home - delta;
+    if (probe > maxSize || probe < minSize) {
+      probe = probeUp ? home - delta : home + delta;
+    }
+    this.probeUp = !probeUp;
+    return Math.max(minSize, Math.min(maxSize, probe));
+  }
+
+  private static void resize(ThreadPoolExecutor pool, int size) {
+    // the core size can't be above the maximum size, so change them in the right order
+    if (size > pool.getMaximumPoolSize()) {
+      pool.setMaximumPoolSize(size);
+      pool.setCorePoolSize(size);
+    } else {
+      pool.setCorePoolSize(size);
+      pool.setMaximumPoolSize(size);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.jmh;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.ModelBatch;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measurements read from JMH's JSON result files, grouped by benchmark, mode, and parameters into
+ * sets which can be fit as a {@link ModelBatch}.
+ *
+ * <p>Each result's thread count and primary score become a {@link Measurement}: a throughput score
+ * ({@code thrpt}) is the throughput at that many threads, and an average-time or sample-time score
+ * ({@code avgt} or {@code sample}) is the mean latency at that many threads, with the score's unit
+ * converted to seconds. Single-shot results ({@code ss}) measure cold starts rather than a steady
+ * state, and are skipped. Results for the same benchmark, mode, and parameters form a set, whether
+ * they come from the same file or not, so a history of runs at different thread counts can be read
+ * in one go.
+ *
+ * <p>The files are read with a streaming parser which only decodes the handful of fields it needs
+ * and skips the rest, including the raw data of each iteration, without building a tree of the
+ * document or allocating for the values it skips. JMH itself needn't be on the classpath.
+ */
+public final class JmhResults {
+
+  private final List<Group> groups;
+  private final double[] concurrency;
+  private final double[] throughput;
+  private final int[] offsets;
+
+  private JmhResults(Collection<Group> groups) {
+    this.groups = new ArrayList<>(groups);
+    int size = 0;
+    for (Group group : groups) {
+      size += group.size;
+    }
+    this.concurrency = new double[size];
+    this.throughput = new double[size];
+    this.offsets = new int[this.groups.size() + 1];
+    int offset = 0;
+    for (int i = 0; i < this.groups.size(); i++) {
+      final Group group = this.groups.get(i);
+      System.arraycopy(group.concurrency, 0, concurrency, offset, group.size);
+      System.arraycopy(group.throughput, 0, throughput, offset, group.size);
+      offsets[i] = offset;
+      offset += group.size;
+    }
+    offsets[this.groups.size()] = offset;
+  }
+
+  /**
+   * Reads the results in a JMH JSON document.
+   *
+   * @param reader a reader for the document
+   * @return a {@link JmhResults} instance
+   * @throws IOException if the document can't be read or isn't a JMH result file
+   * @throws IllegalArgumentException if a score has an unsupported unit
+   */
+  public static JmhResults read(Reader reader) throws IOException {
+    final Map<String, Group> groups = new LinkedHashMap<>();
+    parse(reader, groups);
+    return new JmhResults(groups.values());
+  }
+
+  /**
+   * Reads the results in the given JMH JSON files.
+   *
+   * @param files the paths of the files
+   * @return a {@link JmhResults} instance
+   * @throws IOException if a file can't be read or isn't a JMH result file
+   * @throws IllegalArgumentException if a score has an unsupported unit
+   */
+  public static JmhResults read(Collection<Path> files) throws IOException {
+    final Map<String, Group> groups = new LinkedHashMap<>();
+    for (Path file : files) {
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        parse(reader, groups);
+      } catch (IOException e) {
+        throw new IOException("Unable to read " + file, e);
+      }
+    }
+    return new JmhResults(groups.values());
+  }
+
+  /**
+   * The number of sets of measurements.
+   *
+   * @return the number of distinct combinations of benchmark, mode, and parameters
+   */
+  public int size() {
+    return groups.size();
+  }
+
+  /**
+   * The name of the benchmark of the given set.
+   *
+   * @param i the index of the set
+   * @return the fully qualified name of the benchmark method
+   */
+  public String benchmark(int i) {
+    return groups.get(i).benchmark;
+  }
+
+  /**
+   * The mode of the given set.
+   *
+   * @param i the index of the set
+   * @return the short label of the benchmark's mode, e.g. {@code thrpt} or {@code avgt}
+   */
+  public String mode(int i) {
+    return groups.get(i).mode;
+  }
+
+  /**
+   * The parameters of the given set.
+   *
+   * @param i the index of the set
+   * @return the values of the benchmark's {@code @Param} fields, by name
+   */
+  public Map<String, String> params(int i) {
+    return groups.get(i).params;
+  }
+
+  /**
+   * The measurements of the given set.
+   *
+   * @param i the index of the set
+   * @return a list of {@link Measurement}s, in the order in which they were read
+   */
+  public List<Measurement> measurements(int i) {
+    final List<Measurement> measurements = new ArrayList<>(offsets[i + 1] - offsets[i]);
+    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+      measurements.add(Measurement.ofConcurrency().andThroughput(concurrency[j], throughput[j]));
+    }
+    return measurements;
+  }
+
+  /**
+   * The concurrency of every measurement, set by set, parallel to {@link #throughput()}.
+   *
+   * @return an array of concurrency values
+   */
+  public double[] concurrency() {
+    return concurrency;
+  }
+
+  /**
+   * The throughput of every measurement, set by set, parallel to {@link #concurrency()}.
+   *
+   * @return an array of throughput values
+   */
+  public double[] throughput() {
+    return throughput;
+  }
+
+  /**
+   * The index of the first measurement of each set, followed by the number of measurements, as
+   * used by {@link ModelBatch#fit(double[], double[], int[])}.
+   *
+   * @return an array of offsets
+   */
+  public int[] offsets() {
+    return offsets;
+  }
+
+  /**
+   * Fits a model to each set of measurements, using the default options.
+   *
+   * @return a {@link ModelBatch}, whose indexes are those of the sets
+   */
+  public ModelBatch fit() {
+    return ModelBatch.fit(concurrency, throughput, offsets);
+  }
+
+  private static void parse(Reader reader, Map<String, Group> groups) throws IOException {
+    final JsonReader json = new JsonReader(reader);
+    json.beginArray();
+    while (json.hasNext()) {
+      String benchmark = null;
+      String mode = null;
+      int threads = 0;
+      Map<String, String> params = Collections.emptyMap();
+      double score = Double.NaN;
+      String unit = null;
+
+      json.beginObject();
+      while (json.hasNext()) {
+        switch (json.nextName()) {
+          case "benchmark":
+            benchmark = json.nextString();
+            break;
+          case "mode":
+            mode = json.nextString();
+            break;
+          case "threads":
+            threads = (int) json.nextDouble();
+            break;
+          case "params":
+            params = new LinkedHashMap<>();
+            json.beginObject();
+            while (json.hasNext()) {
+              final String name = json.nextName();
+              params.put(name, json.nextString());
+            }
+            json.endObject();
+            break;
+          case "primaryMetric":
+            json.beginObject();
+            while (json.hasNext()) {
+              switch (json.nextName()) {
+                case "score":
+                  score = json.nextDouble();
+                  break;
+                case "scoreUnit":
+                  unit = json.nextString();
+                  break;
+                default:
+                  json.skipValue();
+              }
+            }
+            json.endObject();
+            break;
+          default:
+            json.skipValue();
+        }
+      }
+      json.endObject();
+
+      if (benchmark == null || mode == null || threads < 1 || unit == null) {
+        throw new IOException("Result is missing its benchmark, mode, threads, or primary metric");
+      }
+      if (!mode.equals("ss") && Double.isFinite(score)) {
+        add(groups, benchmark, mode, params, Scores.measurement(mode, threads, score, unit));
+      }
+    }
+    json.endArray();
+  }
+
+  private static void add(
+      Map<String, Group> groups,
+      String benchmark,
+      String mode,
+      Map<String, String> params,
+      Measurement m) {
+    final String label = Scores.label(benchmark, mode, params);
+    groups
+        .computeIfAbsent(label, k -> new Group(benchmark, mode, params))
+        .add(m.concurrency(), m.throughput());
+  }
+
+  private static final class Group {
+    private final String benchmark;
+    private final String mode;
+    private final Map<String, String> params;
+    private double[] concurrency = new double[8];
+    private double[] throughput = new double[8];
+    private int size;
+
+    private Group(String benchmark, String mode, Map<String, String> params) {
+      this.benchmark = benchmark;
+      this.mode = mode;
+      this.params = Collections.unmodifiableMap(params);
+    }
+
+    private void add(double n, double x) {
+      if (size == concurrency.length) {
+        this.concurrency = Arrays.copyOf(concurrency, size * 2);
+        this.throughput = Arrays.copyOf(throughput, size * 2);
+      }
+      concurrency[size] = n;
+      throughput[size] = x;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.jmh;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull parser for JSON, which reads one token at a time from a buffered stream.
+ *
+ * <p>Values are only decoded when asked for: {@link #skipValue()} passes over strings, numbers,
+ * and whole nested arrays and objects without allocating anything, so most of a large document
+ * costs no more than a scan of its characters. Commas are consumed after each value, and the
+ * parser is lenient about where they appear; it's meant for reading well-formed documents, not for
+ * validating them.
+ */
+final class JsonReader {
+
+  private final Reader in;
+  private final char[] buf = new char[8192];
+  private final StringBuilder scratch = new StringBuilder();
+  private int pos;
+  private int limit;
+
+  JsonReader(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * The first character of the next token, without consuming it.
+   *
+   * @return one of {@code [ ] { } "}, the first character of a number or literal, or {@code -1} at
+   *     the end of the document
+   */
+  int peek() throws IOException {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      final char c = buf[pos];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+      pos++;
+    }
+  }
+
+  void beginArray() throws IOException {
+    expect('[');
+  }
+
+  void endArray() throws IOException {
+    expect(']');
+    afterValue();
+  }
+
+  void beginObject() throws IOException {
+    expect('{');
+  }
+
+  void endObject() throws IOException {
+    expect('}');
+    afterValue();
+  }
+
+  /** Whether or not the current array or object has another element. */
+  boolean hasNext() throws IOException {
+    final int c = peek();
+    return c != ']' && c != '}' && c != -1;
+  }
+
+  String nextName() throws IOException {
+    final String name = readString();
+    expect(':');
+    return name;
+  }
+
+  String nextString() throws IOException {
+    final String s = readString();
+    afterValue();
+    return s;
+  }
+
+  /** Reads a number, or one of the strings JMH writes for non-finite numbers, e.g. "NaN". */
+  double nextDouble() throws IOException {
+    if (peek() == '"') {
+      final String s = nextString();
+      switch (s) {
+        case "NaN":
+          return Double.NaN;
+        case "+INF":
+        case "Infinity":
+          return Double.POSITIVE_INFINITY;
+        case "-INF":
+        case "-Infinity":
+          return Double.NEGATIVE_INFINITY;
+        default:
+          return parseDouble(s);
+      }
+    }
+    scratch.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        break;
+      }
+      final char c = buf[pos];
+      if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+        break;
+      }
+      scratch.append(c);
+      pos++;
+    }
+    afterValue();
+    return parseDouble(scratch.toString());
+  }
+
+  /** Skips the next value, including any nested arrays and objects. */
+  void skipValue() throws IOException {
+    int depth = 0;
+    do {
+      final int c = peek();
+      switch (c) {
+        case '[':
+        case '{':
+          pos++;
+          depth++;
+          break;
+        case ']':
+        case '}':
+          pos++;
+          depth--;
+          afterValue();
+          break;
+        case '"':
+          skipString();
+          // a name is followed by a colon and then its value, which is skipped in turn
+          if (peek() == ':') {
+            pos++;
+            continue;
+          }
+          afterValue();
+          break;
+        case -1:
+          throw new IOException("Unexpected end of document");
+        default:
+          // a number or a literal
+          while ((pos < limit || fill()) && !isDelimiter(buf[pos])) {
+            pos++;
+          }
+          afterValue();
+      }
+    } while (depth > 0);
+  }
+
+  private String readString() throws IOException {
+    expect('"');
+    scratch.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw new IOException("Unterminated string");
+      }
+      final char c = buf[pos++];
+      if (c == '"') {
+        return scratch.toString();
+      } else if (c == '\\') {
+        scratch.append(escape());
+      } else {
+        scratch.append(c);
+      }
+    }
+  }
+
+  private void skipString() throws IOException {
+    expect('"');
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw new IOException("Unterminated string");
+      }
+      final char c = buf[pos++];
+      if (c == '"') {
+        return;
+      } else if (c == '\\') {
+        escape();
+      }
+    }
+  }
+
+  private char escape() throws IOException {
+    final char c = next();
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+          final int digit = Character.digit(next(), 16);
+          if (digit < 0) {
+            throw new IOException("Malformed unicode escape");
+          }
+          code = (code << 4) | digit;
+        }
+        return (char) code;
+      default:
+        // \" \\ \/
+        return c;
+    }
+  }
+
+  private char next() throws IOException {
+    if (pos == limit && !fill()) {
+      throw new IOException("Unexpected end of document");
+    }
+    return buf[pos++];
+  }
+
+  private void expect(char expected) throws IOException {
+    final int c = peek();
+    if (c != expected) {
+      final String found = c < 0 ? "end of document" : "'" + (char) c + "'";
+      throw new IOException("Expected '" + expected + "' but found " + found);
+    }
+    pos++;
+  }
+
+  private void afterValue() throws IOException {
+    if (peek() == ',') {
+      pos++;
+    }
+  }
+
+  private boolean fill() throws IOException {
+    final int n = in.read(buf, 0, buf.length);
+    if (n <= 0) {
+      return false;
+    }
+    this.pos = 0;
+    this.limit = n;
+    return true;
+  }
+
+  private static boolean isDelimiter(char c) {
+    return c == ',' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  private static double parseDouble(String s) throws IOException {
+    try {
+      return Double.parseDouble(s);
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed number: " + s, e);
+    }
+  }
+}
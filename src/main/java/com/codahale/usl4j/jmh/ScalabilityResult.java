@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.jmh;
+
+import com.codahale.usl4j.FitResult;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/** The measurements of a benchmark at a range of thread counts, and the model fit to them. */
+public final class ScalabilityResult {
+
+  private final String benchmark;
+  private final String mode;
+  private final Map<String, String> params;
+  private final List<Measurement> measurements;
+  private final Model model;
+
+  /**
+   * Fits a model to the given measurements of a benchmark.
+   *
+   * @param benchmark the fully qualified name of the benchmark method
+   * @param mode the short label of the benchmark's mode
+   * @param params the values of the benchmark's {@code @Param} fields, by name
+   * @param measurements the measurements of the benchmark, one per thread count
+   */
+  public ScalabilityResult(
+      String benchmark, String mode, Map<String, String> params, List<Measurement> measurements) {
+    this.benchmark = Objects.requireNonNull(benchmark);
+    this.mode = Objects.requireNonNull(mode);
+    this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+    this.measurements = Collections.unmodifiableList(new ArrayList<>(measurements));
+    this.model = fit(this.measurements);
+  }
+
+  // a benchmark which doesn't scale like the USL mustn't take the other results down with it
+  private static Model fit(List<Measurement> measurements) {
+    if (measurements.size() < Scores.MIN_MEASUREMENTS) {
+      return null;
+    }
+    try {
+      final FitResult result = Model.fit(measurements);
+      return result.isConverged() ? result.model() : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * The benchmark's name.
+   *
+   * @return the fully qualified name of the benchmark method
+   */
+  public String benchmark() {
+    return benchmark;
+  }
+
+  /**
+   * The benchmark's mode.
+   *
+   * @return the short label of the benchmark's mode, e.g. {@code thrpt} or {@code avgt}
+   */
+  public String mode() {
+    return mode;
+  }
+
+  /**
+   * The benchmark's parameters.
+   *
+   * @return the values of the benchmark's {@code @Param} fields, by name
+   */
+  public Map<String, String> params() {
+    return params;
+  }
+
+  /**
+   * The measurements of the benchmark, one per thread count.
+   *
+   * @return a list of {@link Measurement}s, in the order in which they were taken
+   */
+  public List<Measurement> measurements() {
+    return measurements;
+  }
+
+  /**
+   * The model fit to the measurements, if any.
+   *
+   * @return the fitted model, or empty if there were fewer than six measurements or the fit didn't
+   *     converge
+   */
+  public Optional<Model> model() {
+    return Optional.ofNullable(model);
+  }
+
+  @Override
+  public String toString() {
+    final String label = Scores.label(benchmark, mode, params);
+    return model().map(m -> label + ' ' + m).orElse(label);
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.jmh;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A runner which measures how JMH benchmarks scale by running them at a range of thread counts and
+ * fitting a {@link Model} to the results.
+ *
+ * <p>Each thread count is a separate JMH run with the given options, so forks, warmup, and
+ * measurement iterations are as configured, but the number of threads is overridden. Each run's
+ * primary score becomes a {@link Measurement}: a throughput score ({@code thrpt}), which JMH sums
+ * across threads, is the throughput at that many threads, and an average-time or sample-time score
+ * ({@code avgt} or {@code sample}), which JMH averages across threads, is the mean latency at that
+ * many threads. The runs are grouped by benchmark, mode, and parameters, and a model is fit to each
+ * group.
+ *
+ * <p>A benchmark which shares state between threads may have the same single-threaded score as
+ * ever and still scale worse, which shows up as a larger σ (contention) or κ (coherency) and a
+ * lower {@link Model#maxConcurrency() maximum concurrency}.
+ */
+public final class ScalabilityRunner {
+
+  private final Options options;
+  private final int[] threads;
+
+  /**
+   * Creates a runner which runs benchmarks at every thread count from 1 to the number of available
+   * processors, or to 6 if there are fewer processors than that.
+   *
+   * @param options the JMH options for each run, e.g. which benchmarks to include
+   */
+  public ScalabilityRunner(Options options) {
+    this(
+        options,
+        range(Math.max(Scores.MIN_MEASUREMENTS, Runtime.getRuntime().availableProcessors())));
+  }
+
+  private ScalabilityRunner(Options options, int[] threads) {
+    this.options = Objects.requireNonNull(options);
+    this.threads = threads;
+  }
+
+  /**
+   * Returns a copy of this runner which runs benchmarks at the given thread counts.
+   *
+   * @param threads the thread counts at which to run each benchmark
+   * @return a new {@link ScalabilityRunner}
+   * @throws IllegalArgumentException if there are fewer than six distinct thread counts
+   */
+  public ScalabilityRunner withThreads(int... threads) {
+    final int[] distinct = Arrays.stream(threads).distinct().sorted().toArray();
+    if (distinct.length < Scores.MIN_MEASUREMENTS) {
+      throw new IllegalArgumentException("Needs at least 6 distinct thread counts");
+    }
+    if (distinct[0] < 1) {
+      throw new IllegalArgumentException("Thread counts must be positive");
+    }
+    return new ScalabilityRunner(options, distinct);
+  }
+
+  /**
+   * Runs the benchmarks at each thread count and fits a model to each benchmark's results.
+   *
+   * @return a {@link ScalabilityResult} for each benchmark, mode, and set of parameters
+   * @throws RunnerException if JMH fails to run the benchmarks
+   */
+  public List<ScalabilityResult> run() throws RunnerException {
+    return fit(runAll());
+  }
+
+  /**
+   * Runs the benchmarks at each thread count and fits a model to each benchmark's results, writing
+   * the results of all the runs to the given file in JMH's JSON format, and the models alongside
+   * it, e.g. {@code jmh-result.usl.json} next to {@code jmh-result.json}.
+   *
+   * @param results the file to which to write the JMH results
+   * @return a {@link ScalabilityResult} for each benchmark, mode, and set of parameters
+   * @throws RunnerException if JMH fails to run the benchmarks
+   * @throws IOException if the results can't be written
+   */
+  public List<ScalabilityResult> run(Path results) throws RunnerException, IOException {
+    final List<RunResult> runs = runAll();
+    try (OutputStream out = Files.newOutputStream(results);
+        PrintStream print = new PrintStream(out, false, StandardCharsets.UTF_8.name())) {
+      ResultFormatFactory.getInstance(ResultFormatType.JSON, print).writeOut(runs);
+    }
+
+    final List<ScalabilityResult> fitted = fit(runs);
+    try (Writer out = Files.newBufferedWriter(sidecar(results), StandardCharsets.UTF_8)) {
+      out.write(toJson(fitted));
+    }
+    return fitted;
+  }
+
+  /**
+   * Runs benchmarks from the command line. The first argument is either the highest thread count,
+   * to run at every count from 1 up to it, or a comma-separated list of thread counts, and the rest
+   * are JMH's usual options. The results are written to the file given with {@code -rff}, or to
+   * {@code jmh-result.json}, and the models alongside them.
+   *
+   * @param args the command line arguments
+   * @throws CommandLineOptionException if JMH's options can't be parsed
+   * @throws RunnerException if JMH fails to run the benchmarks
+   * @throws IOException if the results can't be written
+   */
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException, IOException {
+    if (args.length == 0) {
+      System.err.println("usage: ScalabilityRunner <max threads>|<t1,t2,...> [JMH options]");
+      System.exit(1);
+      return;
+    }
+
+    final int[] threads;
+    if (args[0].contains(",")) {
+      threads = Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray();
+    } else {
+      threads = range(Integer.parseInt(args[0]));
+    }
+    final CommandLineOptions options =
+        new CommandLineOptions(Arrays.copyOfRange(args, 1, args.length));
+    final Path results = Paths.get(options.getResult().orElse("jmh-result.json"));
+    for (ScalabilityResult result :
+        new ScalabilityRunner(options).withThreads(threads).run(results)) {
+      final Optional<Model> model = result.model();
+      if (model.isPresent()) {
+        System.out.printf(
+            "%s: σ=%.6f κ=%.6f λ=%.6f maxConcurrency=%.1f%n",
+            Scores.label(result.benchmark(), result.mode(), result.params()),
+            model.get().sigma(),
+            model.get().kappa(),
+            model.get().lambda(),
+            model.get().maxConcurrency());
+      }
+    }
+  }
+
+  private List<RunResult> runAll() throws RunnerException {
+    final List<RunResult> runs = new ArrayList<>();
+    for (int n : threads) {
+      runs.addAll(new Runner(new OptionsBuilder().parent(options).threads(n).build()).run());
+    }
+    return runs;
+  }
+
+  private static List<ScalabilityResult> fit(List<RunResult> runs) {
+    // group the runs, keeping the order in which JMH ran them
+    final Map<String, List<RunResult>> groups = new LinkedHashMap<>();
+    for (RunResult run : runs) {
+      final BenchmarkParams params = run.getParams();
+      final String label =
+          Scores.label(params.getBenchmark(), params.getMode().shortLabel(), params(params));
+      groups.computeIfAbsent(label, k -> new ArrayList<>()).add(run);
+    }
+
+    final List<ScalabilityResult> results = new ArrayList<>(groups.size());
+    for (List<RunResult> group : groups.values()) {
+      final BenchmarkParams params = group.get(0).getParams();
+      final String mode = params.getMode().shortLabel();
+      final List<Measurement> measurements = new ArrayList<>(group.size());
+      for (RunResult run : group) {
+        measurements.add(
+            Scores.measurement(
+                mode,
+                run.getParams().getThreads(),
+                run.getPrimaryResult().getScore(),
+                run.getPrimaryResult().getScoreUnit()));
+      }
+      results.add(
+          new ScalabilityResult(params.getBenchmark(), mode, params(params), measurements));
+    }
+    return results;
+  }
+
+  private static Map<String, String> params(BenchmarkParams params) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    for (String key : params.getParamsKeys()) {
+      values.put(key, params.getParam(key));
+    }
+    return values;
+  }
+
+  // jmh-result.json -> jmh-result.usl.json
+  private static Path sidecar(Path results) {
+    final String name = results.getFileName().toString();
+    final String base = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+    return results.resolveSibling(base + ".usl.json");
+  }
+
+  private static String toJson(List<ScalabilityResult> results) {
+    final StringBuilder b = new StringBuilder("[\n");
+    for (int i = 0; i < results.size(); i++) {
+      final ScalabilityResult result = results.get(i);
+      b.append("  {\n");
+      b.append("    \"benchmark\": ").append(quote(result.benchmark())).append(",\n");
+      b.append("    \"mode\": ").append(quote(result.mode())).append(",\n");
+      b.append("    \"params\": {");
+      String sep = "";
+      for (Map.Entry<String, String> e : result.params().entrySet()) {
+        b.append(sep).append(quote(e.getKey())).append(": ").append(quote(e.getValue()));
+        sep = ", ";
+      }
+      b.append("},\n");
+      b.append("    \"threads\": [");
+      sep = "";
+      for (Measurement m : result.measurements()) {
+        b.append(sep).append(Math.round(m.concurrency()));
+        sep = ", ";
+      }
+      b.append("],\n");
+      final Optional<Model> model = result.model();
+      b.append("    \"sigma\": ").append(number(model.map(Model::sigma))).append(",\n");
+      b.append("    \"kappa\": ").append(number(model.map(Model::kappa))).append(",\n");
+      b.append("    \"lambda\": ").append(number(model.map(Model::lambda))).append(",\n");
+      b.append("    \"maxConcurrency\": ")
+          .append(number(model.map(Model::maxConcurrency)))
+          .append('\n');
+      b.append(i < results.size() - 1 ? "  },\n" : "  }\n");
+    }
+    return b.append("]\n").toString();
+  }
+
+  // JSON has no NaN or infinities, so those are null
+  private static String number(Optional<Double> value) {
+    return value.filter(Double::isFinite).map(String::valueOf).orElse("null");
+  }
+
+  private static String quote(String s) {
+    final StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        b.append('\\').append(c);
+      } else if (c < 0x20) {
+        b.append(String.format("\\u%04x", (int) c));
+      } else {
+        b.append(c);
+      }
+    }
+    return b.append('"').toString();
+  }
+
+  private static int[] range(int max) {
+    final int[] threads = new int[max];
+    for (int i = 0; i < max; i++) {
+      threads[i] = i + 1;
+    }
+    return threads;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.jmh;
+
+import com.codahale.usl4j.Measurement;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/** Conversions of JMH scores into {@link Measurement}s. */
+final class Scores {
+
+  // a model needs at least six measurements
+  static final int MIN_MEASUREMENTS = 6;
+
+  private Scores() {
+    // utility class
+  }
+
+  /**
+   * Converts a JMH score into a measurement. Throughput scores, which JMH sums across threads, are
+   * the throughput at that many threads; average-time and sample-time scores, which JMH averages
+   * across threads, are the mean latency at that many threads.
+   *
+   * @param mode the benchmark mode's short label, e.g. {@code thrpt} or {@code avgt}
+   * @param threads the number of benchmark threads
+   * @param score the primary score
+   * @param unit the score's unit, e.g. {@code ops/ms} or {@code us/op}
+   * @return a {@link Measurement}, in seconds
+   * @throws IllegalArgumentException if the mode or unit isn't supported
+   */
+  static Measurement measurement(String mode, int threads, double score, String unit) {
+    final int slash = unit.indexOf('/');
+    if (slash < 0) {
+      throw new IllegalArgumentException("Unsupported score unit: " + unit);
+    }
+    final String numerator = unit.substring(0, slash);
+    final String denominator = unit.substring(slash + 1);
+    switch (mode) {
+      case "thrpt":
+        if (!numerator.equals("ops")) {
+          throw new IllegalArgumentException("Unsupported score unit: " + unit);
+        }
+        return Measurement.ofConcurrency().andThroughput(threads, score / seconds(denominator));
+      case "avgt":
+      case "sample":
+        if (!denominator.equals("op")) {
+          throw new IllegalArgumentException("Unsupported score unit: " + unit);
+        }
+        return Measurement.ofConcurrency().andLatency(threads, score * seconds(numerator));
+      default:
+        throw new IllegalArgumentException("Unsupported benchmark mode: " + mode);
+    }
+  }
+
+  /**
+   * A label which identifies a benchmark, mode, and set of parameters, e.g. {@code
+   * com.example.Benchmarks.build:avgt{size=10}}.
+   */
+  static String label(String benchmark, String mode, Map<String, String> params) {
+    if (params.isEmpty()) {
+      return benchmark + ':' + mode;
+    }
+    final StringJoiner joiner = new StringJoiner(", ", benchmark + ':' + mode + '{', "}");
+    params.forEach((k, v) -> joiner.add(k + '=' + v));
+    return joiner.toString();
+  }
+
+  // the length of one of JMH's time units, in seconds
+  private static double seconds(String unit) {
+    switch (unit) {
+      case "ns":
+        return 1e-9;
+      case "us":
+      case "µs":
+      case "μs":
+        return 1e-6;
+      case "ms":
+        return 1e-3;
+      case "s":
+        return 1;
+      case "min":
+        return 60;
+      case "hr":
+        return 60 * 60;
+      case "day":
+        return 24 * 60 * 60;
+      default:
+        throw new IllegalArgumentException("Unsupported time unit: " + unit);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * The {@code com.codahale.usl4j.jmh} package provides classes for measuring how
+ * <a href="https://github.com/openjdk/jmh">JMH</a> benchmarks scale with the number of threads and
+ * fitting Universal Scalability Law models to the results, either by running the benchmarks or by
+ * reading their JSON result files. JMH itself is an optional dependency, which only needs to be on
+ * the classpath to run benchmarks.
+ */
+package com.codahale.usl4j.jmh;
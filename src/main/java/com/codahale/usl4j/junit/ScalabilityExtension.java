@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.junit;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.FitResult;
+import com.codahale.usl4j.LoadSweep;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+
+/**
+ * The extension which runs {@link ScalabilityTest} methods: after the usual single call of the
+ * method, it calls the method from each number of threads and checks the fitted model.
+ */
+final class ScalabilityExtension implements InvocationInterceptor {
+
+  // a model needs at least six measurements
+  private static final int MIN_THREAD_COUNTS = 6;
+
+  // the configuration parameter naming the directory baseline files are relative to
+  private static final String BASELINE_DIRECTORY = "usl4j.baselineDirectory";
+
+  // serializes reads and writes of baseline files, in case tests run in parallel
+  private static final Object BASELINE_LOCK = new Object();
+
+  @Override
+  public void interceptTestMethod(
+      Invocation<Void> invocation,
+      ReflectiveInvocationContext<Method> invocationContext,
+      ExtensionContext extensionContext)
+      throws Throwable {
+    final Method method = invocationContext.getExecutable();
+    final ScalabilityTest config =
+        AnnotationSupport.findAnnotation(method, ScalabilityTest.class)
+            .orElseThrow(IllegalStateException::new);
+    final int[] threads = Arrays.stream(config.threads()).distinct().sorted().toArray();
+    if (threads.length < MIN_THREAD_COUNTS || threads[0] < 1) {
+      throw new IllegalArgumentException("Needs at least 6 distinct, positive thread counts");
+    }
+    // a method which fails on its own fails here, before any threads are started
+    invocation.proceed();
+
+    final Object target = invocationContext.getTarget().orElse(null);
+    final Object[] args = invocationContext.getArguments().toArray();
+    method.setAccessible(true);
+    final Callable<Object> call =
+        () -> {
+          try {
+            return method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            // pass on the method's own exception, so a failed assertion fails the test as usual
+            if (e.getCause() instanceof Exception) {
+              throw (Exception) e.getCause();
+            }
+            throw new ExecutionException(e.getCause());
+          }
+        };
+    final LoadSweep sweep =
+        new LoadSweep(call)
+            .withWarmup(Duration.ofMillis(config.warmupMillis()))
+            .withDuration(Duration.ofMillis(config.durationMillis()))
+            .withThreadFactory(
+                r -> {
+                  final Thread thread = new Thread(r, "scalability-test");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+
+    final List<Measurement> measurements = new ArrayList<>(threads.length);
+    for (int n : threads) {
+      try {
+        measurements.add(sweep.measure(n));
+      } catch (ExecutionException e) {
+        throw unwrap(e);
+      }
+    }
+    final FitResult fit;
+    try {
+      fit =
+          Model.fit(
+              measurements, FitOptions.defaults().withMaxIterations(config.maxIterations()));
+    } catch (IllegalArgumentException e) {
+      throw new AssertionError("Unable to fit a model to " + measurements, e);
+    }
+    if (!fit.isConverged()) {
+      Assertions.fail("Unable to fit a model to " + measurements + ": " + fit);
+    }
+    final Model model = fit.model();
+
+    final Map<String, String> entry = new LinkedHashMap<>();
+    entry.put("sigma", String.valueOf(model.sigma()));
+    entry.put("kappa", String.valueOf(model.kappa()));
+    entry.put("lambda", String.valueOf(model.lambda()));
+    entry.put("maxConcurrency", String.valueOf(model.maxConcurrency()));
+    extensionContext.publishReportEntry(entry);
+
+    final StringJoiner failures = new StringJoiner("; ", model + ": ", "");
+    failures.setEmptyValue("");
+    if (model.sigma() > config.maxSigma()) {
+      failures.add("σ is above " + config.maxSigma());
+    }
+    if (model.kappa() > config.maxKappa()) {
+      failures.add("κ is above " + config.maxKappa());
+    }
+    // a model with no coherency costs has a NaN maximum concurrency, which never counts as too low
+    if (model.maxConcurrency() < config.minMaxConcurrency()) {
+      failures.add("maxConcurrency is below " + config.minMaxConcurrency());
+    }
+    if (!config.baseline().isEmpty()) {
+      final String key = method.getDeclaringClass().getName() + '#' + method.getName();
+      final Path path =
+          extensionContext
+              .getConfigurationParameter(BASELINE_DIRECTORY)
+              .map(Paths::get)
+              .orElse(Paths.get(""))
+              .resolve(config.baseline());
+      final Model baseline = baseline(path, key, model);
+      if (Double.isFinite(model.maxConcurrency()) && Double.isFinite(baseline.maxConcurrency())) {
+        if (model.maxConcurrency() < baseline.maxConcurrency() * (1 - config.tolerance())) {
+          failures.add("maxConcurrency dropped from the baseline's " + baseline.maxConcurrency());
+        }
+      } else {
+        // a model with κ <= 0 has no peak to compare, so compare how far each model scales over
+        // the tested range instead, which doesn't depend on how fast the machine is
+        final int n = threads[threads.length - 1];
+        final double speedup = speedup(model, n);
+        final double previous = speedup(baseline, n);
+        if (!(speedup >= previous * (1 - config.tolerance()))) {
+          failures.add("speedup at " + n + " threads dropped from the baseline's " + previous);
+        }
+      }
+    }
+    if (failures.length() > 0) {
+      Assertions.fail(failures.toString());
+    }
+  }
+
+  // the baseline model for the given test, which is the given model if there's none yet
+  private static Model baseline(Path path, String key, Model model) throws IOException {
+    synchronized (BASELINE_LOCK) {
+      final Properties properties = new Properties();
+      if (Files.exists(path)) {
+        try (InputStream in = Files.newInputStream(path)) {
+          properties.load(in);
+        }
+      }
+
+      final String sigma = properties.getProperty(key + ".sigma");
+      final String kappa = properties.getProperty(key + ".kappa");
+      final String lambda = properties.getProperty(key + ".lambda");
+      if (sigma != null
+          && kappa != null
+          && lambda != null
+          && !Boolean.getBoolean("usl4j.updateBaseline")) {
+        return new Model(
+            Double.parseDouble(sigma), Double.parseDouble(kappa), Double.parseDouble(lambda));
+      }
+
+      properties.setProperty(key + ".sigma", String.valueOf(model.sigma()));
+      properties.setProperty(key + ".kappa", String.valueOf(model.kappa()));
+      properties.setProperty(key + ".lambda", String.valueOf(model.lambda()));
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      try (OutputStream out = Files.newOutputStream(path)) {
+        properties.store(out, "usl4j scalability baselines");
+      }
+      return model;
+    }
+  }
+
+  // X(N)/X(1), which is N for a linearly scalable system
+  private static double speedup(Model model, int n) {
+    return model.throughputAtConcurrency(n) / model.lambda();
+  }
+
+  private static Throwable unwrap(ExecutionException e) {
+    Throwable cause = e;
+    while (cause instanceof ExecutionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.junit;
+
+import com.codahale.usl4j.LoadSweep;
+import com.codahale.usl4j.Model;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Marks a method as a scalability test, which fails if the method scales worse than it should.
+ *
+ * <p>Rather than being called once, the method is called in a closed loop by each of a range of
+ * numbers of threads, as in a {@link LoadSweep}, and a {@link Model} is fit to the resulting
+ * measurements. The test fails if the model's σ (contention) or κ (coherency) is above the given
+ * maximum, if its {@link Model#maxConcurrency() maximum concurrency} is below the given minimum, or
+ * if its maximum concurrency has dropped by more than the given tolerance since the baseline was
+ * recorded. If either model has no coherency costs, and so no maximum concurrency, the speedup at
+ * the largest thread count is compared instead. An exception thrown by the method, or a fit which
+ * doesn't converge, fails the test.
+ *
+ * <p>If a baseline file is given and has no entry for the test, the test's model is recorded there
+ * and becomes the baseline. Set the {@code usl4j.updateBaseline} system property to {@code true} to
+ * record new baselines for all tests, e.g. after an intended change in behavior. Baseline files are
+ * relative to the working directory, or to the directory given by the {@code
+ * usl4j.baselineDirectory} configuration parameter, if it's set.
+ *
+ * <p>The measurements are only as good as the machine they're taken on, so the thread counts
+ * should suit the machine the tests run on, and the thresholds should leave room for noise.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Test
+@ExtendWith(ScalabilityExtension.class)
+public @interface ScalabilityTest {
+
+  /**
+   * The numbers of threads at which to run the method.
+   *
+   * @return at least six distinct, positive thread counts
+   */
+  int[] threads() default {1, 2, 3, 4, 6, 8};
+
+  /**
+   * The time to run the method at each thread count before measuring it.
+   *
+   * @return the warmup period, in milliseconds
+   */
+  long warmupMillis() default 200;
+
+  /**
+   * The time to measure the method at each thread count.
+   *
+   * @return the measurement period, in milliseconds
+   */
+  long durationMillis() default 1000;
+
+  /**
+   * The maximum coefficient of contention.
+   *
+   * @return the highest acceptable σ
+   */
+  double maxSigma() default Double.POSITIVE_INFINITY;
+
+  /**
+   * The maximum coefficient of crosstalk.
+   *
+   * @return the highest acceptable κ
+   */
+  double maxKappa() default Double.POSITIVE_INFINITY;
+
+  /**
+   * The minimum maximum concurrency.
+   *
+   * @return the lowest acceptable {@link Model#maxConcurrency()}
+   */
+  double minMaxConcurrency() default 0;
+
+  /**
+   * The maximum number of iterations the fit may run before it counts as unconverged.
+   *
+   * @return the iteration budget of the fit
+   * @see com.codahale.usl4j.FitOptions#withMaxIterations(int)
+   */
+  int maxIterations() default 5_000;
+
+  /**
+   * The properties file in which baseline models are stored, relative to the working directory or
+   * the {@code usl4j.baselineDirectory} configuration parameter.
+   *
+   * @return the path of the baseline file, or an empty string for no baseline
+   */
+  String baseline() default "";
+
+  /**
+   * The fraction by which the maximum concurrency may drop below the baseline's.
+   *
+   * @return the tolerance, e.g. {@code 0.2} for a drop of at most 20%
+   */
+  double tolerance() default 0.2;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelBatch;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Fits a batch of many small sets of measurements with a varying number of threads. Each operation
+ * is a single fit, so the score is in fits per second.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BatchBenchmarks {
+
+  private static final int SETS = 10_000;
+  private static final int PER_SET = 16;
+
+  private final double[] concurrency = new double[SETS * PER_SET];
+  private final double[] throughput = new double[SETS * PER_SET];
+  private final int[] offsets = new int[SETS + 1];
+  private ForkJoinPool pool;
+
+  @Param({"1", "2", "4", "8"})
+  private int threads = 1;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(0xC0DA);
+    final Model model = new Model(0.03, 0.0008, 1000);
+    for (int s = 0; s < SETS; s++) {
+      offsets[s] = s * PER_SET;
+      for (int i = 0; i < PER_SET; i++) {
+        final int j = (s * PER_SET) + i;
+        concurrency[j] = 1 + (i * 4);
+        throughput[j] =
+            model.throughputAtConcurrency(concurrency[j]) * (1 + 0.05 * random.nextGaussian());
+      }
+    }
+    offsets[SETS] = SETS * PER_SET;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SETS)
+  public ModelBatch fit() {
+    return ModelBatch.fit(concurrency, throughput, offsets, FitOptions.defaults(), pool);
+  }
+}
@@ -15,11 +15,23 @@
  */
 package com.codahale.usl4j.benchmarks;
 
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.FitResult;
 import com.codahale.usl4j.Measurement;
 import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelFitter;
+import com.codahale.usl4j.MultiStartFitter;
+import com.codahale.usl4j.jmh.ScalabilityResult;
+import com.codahale.usl4j.jmh.ScalabilityRunner;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import org.ddogleg.optimization.FactoryOptimization;
+import org.ddogleg.optimization.UnconstrainedLeastSquares;
+import org.ddogleg.optimization.UtilOptimize;
+import org.ddogleg.optimization.functions.FunctionNtoM;
+import org.ejml.data.DMatrixRMaj;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;
@@ -28,22 +40,51 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 @State(Scope.Benchmark)
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
 @BenchmarkMode(Mode.AverageTime)
 public class Benchmarks {
 
+  private static final MultiStartFitter MULTI_START = new MultiStartFitter(16);
+
   private List<Measurement> input = new ArrayList<>();
+  private double[] concurrency = new double[0];
+  private double[] throughput = new double[0];
 
   @Param({"10", "100", "1000", "10000"})
   private int size = 10;
 
+  /**
+   * Measures how {@link #build()} and {@link #fit(Fitter)} scale from 1 to 8 threads, which would
+   * show any contention between concurrent fits, and fits a model to each. The JMH results are
+   * written to {@code jmh-result.json} and the models to {@code jmh-result.usl.json}.
+   */
+  public static void main(String[] args) throws Exception {
+    final Options options =
+        new OptionsBuilder()
+            .include(Benchmarks.class.getName() + "\\.(build|fit)$")
+            .param("size", "1000")
+            .forks(1)
+            .build();
+    final ScalabilityRunner runner =
+        new ScalabilityRunner(options).withThreads(1, 2, 3, 4, 5, 6, 7, 8);
+    for (ScalabilityResult result : runner.run(Paths.get("jmh-result.json"))) {
+      System.out.println(result);
+    }
+  }
+
   @Setup
   public void setup() {
     this.input = new ArrayList<>(size);
+    this.concurrency = new double[size];
+    this.throughput = new double[size];
     for (int i = 0; i < size; i++) {
       input.add(Measurement.ofConcurrency().andThroughput(i, Math.random() * i));
+      concurrency[i] = input.get(i).concurrency();
+      throughput[i] = input.get(i).throughput();
     }
   }
 
@@ -51,4 +92,91 @@ public class Benchmarks {
   public Model build() {
     return Model.build(input);
   }
+
+  /**
+   * The fit {@link #build()} used to be: DDogleg's Levenberg-Marquardt solver, estimating the
+   * Jacobian by numerical differentiation, for comparison with the built-in solver.
+   */
+  @Benchmark
+  public Model buildNumerical() {
+    return buildNumerical(input, new int[1]);
+  }
+
+  /**
+   * Fits a model as {@link #buildNumerical()} does, counting the evaluations of the residuals.
+   * Each evaluation is a pass over the measurements, as is each of the built-in solver's {@link
+   * FitResult#evaluations()}, which also calculate the Jacobian.
+   *
+   * @param input the measurements
+   * @param evaluations a one-element array to which the number of evaluations is added
+   * @return the fitted model
+   */
+  public static Model buildNumerical(List<Measurement> input, int[] evaluations) {
+    final UnconstrainedLeastSquares<DMatrixRMaj> lm =
+        FactoryOptimization.levenbergMarquardt(null, true);
+    lm.setFunction(
+        new FunctionNtoM() {
+          @Override
+          public int getNumOfInputsN() {
+            return 3;
+          }
+
+          @Override
+          public int getNumOfOutputsM() {
+            return input.size();
+          }
+
+          @Override
+          public void process(double[] params, double[] output) {
+            evaluations[0]++;
+            final Model model = new Model(params[0], params[1], params[2]);
+            for (int i = 0; i < input.size(); i++) {
+              final Measurement m = input.get(i);
+              output[i] = m.throughput() - model.throughputAtConcurrency(m.concurrency());
+            }
+          }
+        },
+        null);
+    final double l =
+        input.stream().mapToDouble(m -> m.throughput() / m.concurrency()).max().orElse(1);
+    lm.initialize(new double[] {0.1, 0.01, l}, 1e-12, 1e-12);
+    UtilOptimize.process(lm, 5_000);
+    return new Model(lm.getParameters()[0], lm.getParameters()[1], lm.getParameters()[2]);
+  }
+
+  @Benchmark
+  public Model buildFromArrays() {
+    return Model.build(concurrency, throughput);
+  }
+
+  @Benchmark
+  public Model fit(Fitter fitter) {
+    return fitter.fitter.fit(concurrency, throughput);
+  }
+
+  @Benchmark
+  public Model fitVariableProjection(ProjectedFitter fitter) {
+    return fitter.fitter.fit(concurrency, throughput);
+  }
+
+  @Benchmark
+  public FitResult multiStart() {
+    return MULTI_START.fit(concurrency, throughput, 0, size);
+  }
+
+  @Benchmark
+  public Model buildLinearized() {
+    return Model.buildLinearized(concurrency, throughput, 0, size);
+  }
+
+  @State(Scope.Thread)
+  public static class Fitter {
+    private final ModelFitter fitter = new ModelFitter();
+  }
+
+  @State(Scope.Thread)
+  public static class ProjectedFitter {
+    private final ModelFitter fitter =
+        new ModelFitter(FitOptions.defaults().withVariableProjection(true));
+  }
 }
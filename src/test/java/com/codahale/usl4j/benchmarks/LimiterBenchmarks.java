@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.UslLimiter;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Compares the cost of acquiring and releasing a permit from a {@link UslLimiter} with that of a
+ * plain {@link Semaphore} with the same number of permits.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class LimiterBenchmarks {
+
+  private final UslLimiter limiter = new UslLimiter(new Model(0.02, 0.0005, 1000));
+  private final Semaphore semaphore = new Semaphore(limiter.limit());
+
+  @Benchmark
+  @Threads(1)
+  public boolean limiter01() {
+    return limiter();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean semaphore01() {
+    return semaphore();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean limiter08() {
+    return limiter();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean semaphore08() {
+    return semaphore();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean limiter64() {
+    return limiter();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean semaphore64() {
+    return semaphore();
+  }
+
+  private boolean limiter() {
+    if (limiter.tryAcquire()) {
+      limiter.release();
+      return true;
+    }
+    return false;
+  }
+
+  private boolean semaphore() {
+    if (semaphore.tryAcquire()) {
+      semaphore.release();
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.Model;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the cost of a single call to each of a model's prediction methods. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class ModelBenchmarks {
+
+  // non-final, so that the JIT can't constant-fold the predictions
+  private Model model = new Model(0.03, 0.0008, 1000);
+  private double n = 20;
+  private double x = 11_000;
+  private double r = 0.002;
+
+  @Benchmark
+  public double maxConcurrency() {
+    return model.maxConcurrency();
+  }
+
+  @Benchmark
+  public double maxThroughput() {
+    return model.maxThroughput();
+  }
+
+  @Benchmark
+  public double throughputAtConcurrency() {
+    return model.throughputAtConcurrency(n);
+  }
+
+  @Benchmark
+  public double latencyAtConcurrency() {
+    return model.latencyAtConcurrency(n);
+  }
+
+  @Benchmark
+  public double latencyAtThroughput() {
+    return model.latencyAtThroughput(x);
+  }
+
+  @Benchmark
+  public double throughputAtLatency() {
+    return model.throughputAtLatency(r);
+  }
+
+  @Benchmark
+  public double concurrencyAtLatency() {
+    return model.concurrencyAtLatency(r);
+  }
+
+  @Benchmark
+  public double concurrencyAtThroughput() {
+    return model.concurrencyAtThroughput(x);
+  }
+}
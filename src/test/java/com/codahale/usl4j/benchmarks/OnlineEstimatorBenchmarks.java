@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.OnlineEstimator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the cost of updating an {@link OnlineEstimator} with a single measurement. */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class OnlineEstimatorBenchmarks {
+
+  private static final int SAMPLES = 1024;
+
+  private final OnlineEstimator estimator =
+      new OnlineEstimator(new Model(0.05, 0.002, 1000), 0.999);
+  private final double[] concurrency = new double[SAMPLES];
+  private final double[] throughput = new double[SAMPLES];
+  private int i;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(0xC0DA);
+    final Model model = new Model(0.05, 0.002, 1000);
+    for (int i = 0; i < SAMPLES; i++) {
+      concurrency[i] = 1 + random.nextInt(64);
+      throughput[i] =
+          model.throughputAtConcurrency(concurrency[i]) * (1 + 0.05 * random.nextGaussian());
+    }
+  }
+
+  @Benchmark
+  public boolean update() {
+    final int j = i++ & (SAMPLES - 1);
+    return estimator.update(concurrency[j], throughput[j]);
+  }
+}
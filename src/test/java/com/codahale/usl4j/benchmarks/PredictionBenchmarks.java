@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.Model;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Compares evaluating a model over a grid of points one call at a time with the bulk methods. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class PredictionBenchmarks {
+
+  private final Model model = new Model(0.03, 0.0008, 1000);
+  private double[] in = new double[0];
+  private double[] out = new double[0];
+
+  @Param({"1000", "100000", "1000000"})
+  private int size = 1000;
+
+  @Setup
+  public void setup() {
+    this.in = new double[size];
+    this.out = new double[size];
+    for (int i = 0; i < size; i++) {
+      in[i] = 1 + (i * 0.01);
+    }
+  }
+
+  @Benchmark
+  public double[] throughputAtConcurrencyScalar() {
+    for (int i = 0; i < in.length; i++) {
+      out[i] = model.throughputAtConcurrency(in[i]);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public double[] throughputAtConcurrencyBulk() {
+    model.throughputAtConcurrency(in, out);
+    return out;
+  }
+
+  @Benchmark
+  public double[] latencyAtConcurrencyScalar() {
+    for (int i = 0; i < in.length; i++) {
+      out[i] = model.latencyAtConcurrency(in[i]);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public double[] latencyAtConcurrencyBulk() {
+    model.latencyAtConcurrency(in, out);
+    return out;
+  }
+
+  @Benchmark
+  public double[] latencyAtThroughputScalar() {
+    for (int i = 0; i < in.length; i++) {
+      out[i] = model.latencyAtThroughput(in[i]);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public double[] latencyAtThroughputBulk() {
+    model.latencyAtThroughput(in, out);
+    return out;
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.ConcurrencyProbe;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the overhead of instrumenting a trivial task with a probe. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class ProbeBenchmarks {
+
+  private final ConcurrencyProbe probe = new ConcurrencyProbe();
+  private final Runnable task = () -> Blackhole.consumeCPU(10);
+  private final Runnable wrapped = probe.wrap(task);
+
+  @Benchmark
+  public void raw() {
+    task.run();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void wrapped01() {
+    wrapped.run();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void wrapped04() {
+    wrapped.run();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void wrapped16() {
+    wrapped.run();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.MeasurementRecorder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the cost of recording a measurement as the number of producer threads grows, while a
+ * background thread drains the recorder every millisecond.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class RecorderBenchmarks {
+
+  private final MeasurementRecorder recorder = new MeasurementRecorder(1 << 16);
+  private ScheduledExecutorService drainer;
+
+  @Setup
+  public void setup() {
+    this.drainer = Executors.newSingleThreadScheduledExecutor();
+    drainer.scheduleWithFixedDelay(recorder::drain, 1, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    drainer.shutdownNow();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean record01() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(2)
+  public boolean record02() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean record04() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean record08() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public boolean record16() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(32)
+  public boolean record32() {
+    return recorder.record(8, 1000);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean record64() {
+    return recorder.record(8, 1000);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.benchmarks;
+
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelFitter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Refits a model to a sequence of noisy samples of the same USL curve, as a periodic refit of a
+ * live system's measurements would. Alongside the time per fit, JMH reports the mean number of
+ * solver iterations per fit as {@code iterationsPerFit}.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class RefitBenchmarks {
+
+  private static final int SAMPLES = 16;
+
+  private final ModelFitter cold = new ModelFitter();
+  private final ModelFitter warm = new ModelFitter();
+  private double[] concurrency = new double[0];
+  private double[][] throughput = new double[0][];
+  private int i;
+
+  @Param({"10", "100", "1000", "10000"})
+  private int size = 10;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(0xC0DA);
+    final Model model = new Model(0.03, 0.0008, 1000);
+    this.concurrency = new double[size];
+    this.throughput = new double[SAMPLES][size];
+    for (int i = 0; i < size; i++) {
+      concurrency[i] = 1 + (i % 64);
+      for (int j = 0; j < SAMPLES; j++) {
+        throughput[j][i] =
+            model.throughputAtConcurrency(concurrency[i]) * (1 + 0.05 * random.nextGaussian());
+      }
+    }
+    warm.setWarmStart(true);
+  }
+
+  @Benchmark
+  public Model coldFit(Iterations iterations) {
+    final Model model = cold.fit(concurrency, next());
+    iterations.add(cold);
+    return model;
+  }
+
+  @Benchmark
+  public Model warmFit(Iterations iterations) {
+    final Model model = warm.fit(concurrency, next());
+    iterations.add(warm);
+    return model;
+  }
+
+  private double[] next() {
+    return throughput[i++ % SAMPLES];
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Iterations {
+    public long fits;
+    public long iterations;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.fits = 0;
+      this.iterations = 0;
+    }
+
+    public double iterationsPerFit() {
+      return fits == 0 ? 0 : (double) iterations / fits;
+    }
+
+    private void add(ModelFitter fitter) {
+      fits++;
+      iterations += fitter.result().iterations();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import com.codahale.usl4j.MeasurementRecorder;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Races two producers sharing a stripe against a drain. Every measurement must show up in exactly
+ * one of the racing drain and a final drain, with its value intact.
+ *
+ * <p>{@code r1} is the number of measurements the racing drain saw, {@code r2} the total number
+ * across both drains, and {@code r3} the sum of their concurrency values.
+ */
+public class MeasurementRecorderStress {
+
+  @JCStressTest
+  @Outcome(id = "0, 2, 3", expect = ACCEPTABLE, desc = "Drained before either record.")
+  @Outcome(id = "1, 2, 3", expect = ACCEPTABLE, desc = "Drained between the records.")
+  @Outcome(id = "2, 2, 3", expect = ACCEPTABLE, desc = "Drained after both records.")
+  @Outcome(expect = FORBIDDEN, desc = "A measurement was lost, duplicated, or torn.")
+  @State
+  public static class RecordAndDrain {
+    private final MeasurementRecorder recorder = new MeasurementRecorder(1, 4);
+    private MeasurementRecorder.Snapshot racing;
+
+    @Actor
+    public void first() {
+      recorder.record(1, 10);
+    }
+
+    @Actor
+    public void second() {
+      recorder.record(2, 20);
+    }
+
+    @Actor
+    public void drain() {
+      racing = recorder.drain();
+    }
+
+    @Arbiter
+    public void arbiter(III_Result r) {
+      final MeasurementRecorder.Snapshot rest = recorder.drain();
+      r.r1 = racing.size();
+      r.r2 = racing.size() + rest.size();
+      double sum = 0;
+      for (double c : racing.concurrency()) {
+        sum += c;
+      }
+      for (double c : rest.concurrency()) {
+        sum += c;
+      }
+      r.r3 = (int) sum;
+    }
+  }
+
+  @JCStressTest
+  @Outcome(id = "1, 0, 1", expect = ACCEPTABLE, desc = "The first record won the last slot.")
+  @Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "The second record won the last slot.")
+  @Outcome(expect = FORBIDDEN, desc = "The last slot was lost or double-booked.")
+  @State
+  public static class RecordWhenAlmostFull {
+    private final MeasurementRecorder recorder = new MeasurementRecorder(1, 2);
+
+    public RecordWhenAlmostFull() {
+      recorder.record(0, 0);
+    }
+
+    @Actor
+    public void first(III_Result r) {
+      r.r1 = recorder.record(1, 1) ? 1 : 0;
+    }
+
+    @Actor
+    public void second(III_Result r) {
+      r.r2 = recorder.record(2, 2) ? 1 : 0;
+    }
+
+    @Arbiter
+    public void arbiter(III_Result r) {
+      r.r3 = (int) recorder.dropped();
+    }
+  }
+}
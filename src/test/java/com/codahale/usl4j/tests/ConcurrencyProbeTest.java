@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.ConcurrencyProbe;
+import com.codahale.usl4j.Measurement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyProbeTest {
+
+  @Test
+  void badArguments() {
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      assertThatThrownBy(() -> probe.schedule(executor, Duration.ZERO, m -> {}))
+          .isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> probe.wrap((Runnable) null))
+          .isInstanceOf(NullPointerException.class);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void noTasks() {
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    assertThat(probe.sample()).isEmpty();
+    assertThat(probe.inFlight()).isZero();
+  }
+
+  @Test
+  void tasksInFlight() throws Exception {
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final ExecutorService executor = probe.wrap(Executors.newFixedThreadPool(3));
+    try {
+      for (int i = 0; i < 3; i++) {
+        executor.execute(
+            () -> {
+              try {
+                latch.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+
+      while (probe.inFlight() < 3) {
+        Thread.sleep(1);
+      }
+      assertThat(probe.inFlight()).isEqualTo(3);
+
+      latch.countDown();
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+    assertThat(probe.inFlight()).isZero();
+  }
+
+  @Test
+  void concurrencyAndThroughput() throws Exception {
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    final ExecutorService executor = probe.wrap(Executors.newFixedThreadPool(4));
+    try {
+      probe.sample();
+      for (int i = 0; i < 200; i++) {
+        executor.execute(
+            () -> {
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    // four threads are busy for almost the whole interval, and each finishes a task every ~10ms
+    final Measurement m = probe.sample().orElseThrow(AssertionError::new);
+    assertThat(m.concurrency()).isBetween(3.0, 4.1);
+    assertThat(m.throughput()).isBetween(100.0, 410.0);
+    assertThat(probe.sample()).isEmpty();
+  }
+
+  @Test
+  void concurrencyNeverExceedsThreads() throws Exception {
+    final int threads = 4;
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      final Thread worker =
+          new Thread(
+              () -> {
+                while (running.get()) {
+                  probe.start();
+                  probe.end();
+                }
+              });
+      worker.start();
+      workers.add(worker);
+    }
+    try {
+      // the counters change constantly, so every sample races with every thread
+      for (int i = 0; i < 2_000; i++) {
+        probe.sample().ifPresent(m -> assertThat(m.concurrency()).isBetween(0.0, (double) threads));
+        assertThat(probe.inFlight()).isBetween(0L, (long) threads);
+      }
+    } finally {
+      running.set(false);
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    }
+    assertThat(probe.inFlight()).isZero();
+  }
+
+  @Test
+  void tasksEndingOnOtherThreads() throws Exception {
+    final ConcurrencyProbe probe = new ConcurrencyProbe();
+    final Thread starter = new Thread(probe::start);
+    starter.start();
+    starter.join();
+    assertThat(probe.inFlight()).isEqualTo(1);
+
+    // the starting thread has exited, so its counters are retired with one task still in flight
+    probe.sample();
+    assertThat(probe.inFlight()).isEqualTo(1);
+
+    final Thread ender = new Thread(probe::end);
+    ender.start();
+    ender.join();
+    assertThat(probe.inFlight()).isZero();
+
+    final Measurement m = probe.sample().orElseThrow(AssertionError::new);
+    assertThat(m.concurrency()).isBetween(0.0, 1.0);
+    assertThat(probe.inFlight()).isZero();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.ExperimentPlanner;
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class ExperimentPlannerTest {
+
+  // Nmax = √((1-σ)/κ) ≈ 44.3
+  private static final Model TRUTH = new Model(0.02, 0.0005, 1000);
+  private static final double NMAX = Math.sqrt((1 - 0.02) / 0.0005);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new ExperimentPlanner(0, 10, 0.1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new ExperimentPlanner(10, 5, 0.1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new ExperimentPlanner(1, 10, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    final ExperimentPlanner planner = new ExperimentPlanner(1, 10, 0.1);
+    assertThatThrownBy(() -> planner.plan(measure(new Random(1), 1, 2)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void initialLevels() {
+    assertThat(new ExperimentPlanner(1, 64, 0.1).initialLevels())
+        .containsExactly(1, 2, 5, 12, 28, 64);
+    assertThat(new ExperimentPlanner(4, 4, 0.1).initialLevels()).containsOnly(4);
+  }
+
+  @Test
+  void exactMeasurements() {
+    final ExperimentPlanner planner = new ExperimentPlanner(1, 64, 0.1);
+    final List<Measurement> measurements = new ArrayList<>();
+    for (int n : planner.initialLevels()) {
+      final double x = TRUTH.throughputAtConcurrency(n);
+      measurements.add(Measurement.ofConcurrency().andThroughput(n, x));
+    }
+
+    final ExperimentPlanner.Plan plan = planner.plan(measurements);
+    assertThat(plan.model().sigma()).isCloseTo(TRUTH.sigma(), Offset.offset(1e-6));
+    assertThat(plan.model().kappa()).isCloseTo(TRUTH.kappa(), Offset.offset(1e-6));
+    assertThat(plan.nextConcurrency()).isBetween(1, 64);
+    assertThat(plan.maxConcurrencyStandardError()).isCloseTo(0, Offset.offset(1e-3));
+
+    // too few measurements to stop, however certain they seem
+    assertThat(plan.isComplete()).isFalse();
+  }
+
+  @Test
+  void stopsEarly() {
+    for (long seed = 0; seed < 10; seed++) {
+      final Random random = new Random(seed);
+      final ExperimentPlanner planner = new ExperimentPlanner(1, 64, 0.1);
+      final List<Measurement> measurements = measure(random, planner.initialLevels());
+      ExperimentPlanner.Plan plan = planner.plan(measurements);
+      while (!plan.isComplete() && measurements.size() < 64) {
+        measurements.addAll(measure(random, plan.nextConcurrency()));
+        plan = planner.plan(measurements);
+      }
+
+      // a full sweep would take 64 measurements
+      assertThat(plan.isComplete()).isTrue();
+      assertThat(measurements.size()).isLessThanOrEqualTo(32);
+      final double nmax = Math.sqrt((1 - plan.model().sigma()) / plan.model().kappa());
+      assertThat(nmax).isCloseTo(NMAX, Offset.offset(NMAX * 0.1));
+    }
+  }
+
+  @Test
+  void stopsWithoutAPeak() {
+    // with no coherency costs there's no N_max to pin down, only the absence of a peak
+    final Model linear = new Model(0.05, 0, 1000);
+    for (long seed = 0; seed < 10; seed++) {
+      final Random random = new Random(seed);
+      final ExperimentPlanner planner = new ExperimentPlanner(1, 64, 0.1);
+      final List<Measurement> measurements = measure(linear, random, planner.initialLevels());
+      ExperimentPlanner.Plan plan = planner.plan(measurements);
+      while (!plan.isComplete() && measurements.size() < 64) {
+        measurements.addAll(measure(linear, random, plan.nextConcurrency()));
+        plan = planner.plan(measurements);
+      }
+
+      assertThat(plan.isComplete()).isTrue();
+      assertThat(measurements.size()).isLessThanOrEqualTo(32);
+      // N_max is NaN if κ < 0
+      assertThat(plan.model().maxConcurrency() <= 64).isFalse();
+    }
+  }
+
+  @Test
+  void fitDoesNotConverge() {
+    // one iteration isn't enough, so there's no model to plan from
+    final FitOptions options = FitOptions.defaults().withMaxIterations(1);
+    final ExperimentPlanner planner = new ExperimentPlanner(1, 64, 0.1, options);
+    final ExperimentPlanner.Plan plan =
+        planner.plan(measure(new Random(1), planner.initialLevels()));
+
+    // 46 is 18 from both 28 and 64, the widest gap between the initial levels
+    assertThat(plan.nextConcurrency()).isEqualTo(46);
+    assertThat(plan.maxConcurrencyStandardError()).isNaN();
+    assertThat(plan.isComplete()).isFalse();
+  }
+
+  // measures the true model with 2% noise
+  private static List<Measurement> measure(Random random, int... levels) {
+    return measure(TRUTH, random, levels);
+  }
+
+  private static List<Measurement> measure(Model truth, Random random, int... levels) {
+    final List<Measurement> measurements = new ArrayList<>();
+    for (int n : levels) {
+      final double x = truth.throughputAtConcurrency(n) * (1 + 0.02 * random.nextGaussian());
+      measurements.add(Measurement.ofConcurrency().andThroughput(n, x));
+    }
+    return measurements;
+  }
+}
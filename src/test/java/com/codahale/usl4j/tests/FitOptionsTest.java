@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class FitOptionsTest {
+
+  @Test
+  void defaults() {
+    final FitOptions options = FitOptions.defaults();
+    assertThat(options.maxIterations()).isEqualTo(5_000);
+    assertThat(options.functionTolerance()).isEqualTo(1e-14);
+    assertThat(options.gradientTolerance()).isEqualTo(1e-12);
+    assertThat(options.deadline()).isEmpty();
+    assertThat(options.variableProjection()).isFalse();
+  }
+
+  @Test
+  void copies() {
+    final FitOptions options =
+        FitOptions.defaults()
+            .withMaxIterations(10)
+            .withFunctionTolerance(1e-6)
+            .withGradientTolerance(1e-3)
+            .withDeadline(Duration.ofMillis(2))
+            .withVariableProjection(true);
+    assertThat(options.maxIterations()).isEqualTo(10);
+    assertThat(options.functionTolerance()).isEqualTo(1e-6);
+    assertThat(options.gradientTolerance()).isEqualTo(1e-3);
+    assertThat(options.deadline()).contains(Duration.ofMillis(2));
+    assertThat(options.variableProjection()).isTrue();
+    assertThat(options.withoutDeadline().deadline()).isEmpty();
+    assertThat(FitOptions.defaults().maxIterations()).isEqualTo(5_000);
+  }
+
+  @Test
+  void badValues() {
+    final FitOptions options = FitOptions.defaults();
+
+    assertThatThrownBy(() -> options.withMaxIterations(-1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> options.withFunctionTolerance(-1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> options.withGradientTolerance(Double.NaN))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> options.withDeadline(Duration.ZERO))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void equality() {
+    assertThat(FitOptions.defaults().withMaxIterations(10))
+        .isEqualTo(FitOptions.defaults().withMaxIterations(10))
+        .hasSameHashCodeAs(FitOptions.defaults().withMaxIterations(10))
+        .isNotEqualTo(FitOptions.defaults());
+
+    assertThat(FitOptions.defaults().withVariableProjection(true))
+        .isNotEqualTo(FitOptions.defaults());
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static com.codahale.usl4j.tests.ModelTest.EPSILON;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.FitResult;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelFitter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class FitResultTest {
+
+  private static final double[][] POINTS = {
+    {1, 955.16}, {2, 1878.91}, {3, 2688.01}, {4, 3548.68}, {5, 4315.54}, {6, 5130.43},
+    {7, 5931.37}, {8, 6531.08}, {9, 7219.8}, {10, 7867.61}, {11, 8278.71}, {12, 8646.7}
+  };
+
+  private final List<Measurement> measurements =
+      Arrays.stream(POINTS)
+          .map(Measurement.ofConcurrency()::andThroughput)
+          .collect(Collectors.toList());
+
+  @Test
+  void converged() {
+    final FitResult result = Model.fit(measurements);
+    assertThat(result.model()).isEqualTo(Model.build(measurements));
+    assertThat(result.isConverged()).isTrue();
+    assertThat(result.iterations()).isPositive();
+    assertThat(result.evaluations()).isPositive();
+    assertThat(result.elapsedNanos()).isPositive();
+  }
+
+  @Test
+  void goodnessOfFit() {
+    final FitResult result = Model.fit(measurements);
+    double sse = 0;
+    for (double[] p : POINTS) {
+      final double r = p[1] - result.model().throughputAtConcurrency(p[0]);
+      sse += r * r;
+    }
+    assertThat(result.residualSumOfSquares()).isCloseTo(sse, EPSILON);
+    assertThat(result.rSquared()).isBetween(0.99, 1.0);
+  }
+
+  @Test
+  void standardErrors() {
+    final FitResult result = Model.fit(measurements);
+    assertThat(result.sigmaStandardError()).isPositive().isLessThan(0.01);
+    assertThat(result.kappaStandardError()).isPositive().isLessThan(0.001);
+    assertThat(result.lambdaStandardError()).isPositive().isLessThan(50);
+  }
+
+  @Test
+  void unconverged() {
+    final FitResult result = Model.fit(measurements, FitOptions.defaults().withMaxIterations(1));
+    assertThat(result.isConverged()).isFalse();
+    assertThat(result.iterations()).isEqualTo(1);
+    assertThat(result.residualSumOfSquares())
+        .isGreaterThan(Model.fit(measurements).residualSumOfSquares());
+  }
+
+  @Test
+  void noFits() {
+    assertThatThrownBy(() -> new ModelFitter().result())
+        .isInstanceOf(IllegalStateException.class);
+  }
+}
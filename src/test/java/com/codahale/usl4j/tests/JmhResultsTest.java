@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.ModelBatch;
+import com.codahale.usl4j.jmh.JmhResults;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JmhResultsTest {
+
+  // throughput in ops/s from a model with σ=0.05, κ=0.002, and λ=1000
+  private static double throughput(int n) {
+    return (1000.0 * n) / (1 + (0.05 * (n - 1)) + (0.002 * n * (n - 1)));
+  }
+
+  // a result in the format JMH writes, with the fields which should be skipped
+  private static String result(
+      String benchmark, String mode, int threads, String score, String unit, String params) {
+    return "{\"jmhVersion\" : \"1.37\", \"benchmark\" : \""
+        + benchmark
+        + "\", \"mode\" : \""
+        + mode
+        + "\", \"threads\" : "
+        + threads
+        + ", \"forks\" : 1, \"jvmArgs\" : [ \"-Dx=\\\"y\\\"\" ], "
+        + (params.isEmpty() ? "" : "\"params\" : { " + params + " }, ")
+        + "\"primaryMetric\" : { \"score\" : "
+        + score
+        + ", \"scoreError\" : \"NaN\", \"scoreConfidence\" : [ 1.0, 2.0 ], "
+        + "\"scorePercentiles\" : { \"0.0\" : 1.5E-3, \"50.0\" : 2.0 }, \"scoreUnit\" : \""
+        + unit
+        + "\", \"rawData\" : [ [ 1.0, 2.0 ], [ 3.0, -4.5e-2 ] ] }, "
+        + "\"secondaryMetrics\" : { \"gc\" : { \"score\" : 1, \"ok\" : [ [ true, null ] ] } } }";
+  }
+
+  private static String document(List<String> results) {
+    return "[\n" + String.join(",\n", results) + "\n]\n";
+  }
+
+  @Test
+  void groupsByBenchmarkModeAndParams() throws IOException {
+    final List<String> results = new ArrayList<>();
+    for (int n = 1; n <= 8; n++) {
+      final double x = throughput(n);
+      results.add(result("a.B.thrpt", "thrpt", n, String.valueOf(x / 1e3), "ops/ms", ""));
+      results.add(
+          result("a.B.avgt", "avgt", n, String.valueOf(n / x * 1e6), "us/op", "\"size\" : \"10\""));
+      results.add(
+          result("a.B.avgt", "avgt", n, String.valueOf(n / x * 2e6), "us/op", "\"size\" : \"20\""));
+      results.add(result("a.B.ss", "ss", n, "5.0", "s/op", ""));
+    }
+    results.add(result("a.B.thrpt", "thrpt", 9, "\"NaN\"", "ops/s", ""));
+
+    final JmhResults jmh = JmhResults.read(new StringReader(document(results)));
+    assertThat(jmh.size()).isEqualTo(3);
+    assertThat(jmh.offsets()).containsExactly(0, 8, 16, 24);
+
+    assertThat(jmh.benchmark(0)).isEqualTo("a.B.thrpt");
+    assertThat(jmh.mode(0)).isEqualTo("thrpt");
+    assertThat(jmh.params(0)).isEmpty();
+    assertThat(jmh.benchmark(1)).isEqualTo("a.B.avgt");
+    assertThat(jmh.mode(1)).isEqualTo("avgt");
+    assertThat(jmh.params(1)).containsEntry("size", "10");
+    assertThat(jmh.params(2)).containsEntry("size", "20");
+
+    final Measurement m = jmh.measurements(1).get(3);
+    assertThat(m.concurrency()).isEqualTo(4);
+    assertThat(m.throughput()).isCloseTo(throughput(4), Offset.offset(1e-6));
+
+    final ModelBatch batch = jmh.fit();
+    assertThat(batch.size()).isEqualTo(3);
+    for (int i = 0; i < 2; i++) {
+      assertThat(batch.sigma(i)).isCloseTo(0.05, Offset.offset(1e-6));
+      assertThat(batch.kappa(i)).isCloseTo(0.002, Offset.offset(1e-6));
+      assertThat(batch.lambda(i)).isCloseTo(1000, Offset.offset(1e-3));
+    }
+    assertThat(batch.lambda(2)).isCloseTo(500, Offset.offset(1e-3));
+  }
+
+  @Test
+  void mergesFiles(@TempDir Path dir) throws IOException {
+    final List<Path> files = new ArrayList<>();
+    for (int n = 1; n <= 6; n++) {
+      final Path file = dir.resolve("jmh-result-" + n + ".json");
+      final String score = String.valueOf(throughput(n));
+      final String doc =
+          document(Collections.singletonList(result("a.B.c", "thrpt", n, score, "ops/s", "")));
+      Files.write(file, doc.getBytes(StandardCharsets.UTF_8));
+      files.add(file);
+    }
+
+    final JmhResults jmh = JmhResults.read(files);
+    assertThat(jmh.size()).isEqualTo(1);
+    assertThat(jmh.concurrency()).containsExactly(1, 2, 3, 4, 5, 6);
+    assertThat(jmh.fit().isFitted(0)).isTrue();
+  }
+
+  @Test
+  void convertsUnits() throws IOException {
+    final List<String> results =
+        Arrays.asList(
+            result("a", "thrpt", 2, "3.0", "ops/us", ""),
+            result("b", "thrpt", 2, "3.0", "ops/min", ""),
+            result("c", "avgt", 2, "4.0", "ns/op", ""),
+            result("d", "sample", 2, "4.0", "ms/op", ""),
+            result("e", "avgt", 2, "4.0", "s/op", ""));
+    final JmhResults jmh = JmhResults.read(new StringReader(document(results)));
+
+    assertThat(jmh.throughput()[0]).isCloseTo(3e6, Offset.offset(1e-6));
+    assertThat(jmh.throughput()[1]).isCloseTo(0.05, Offset.offset(1e-9));
+    assertThat(jmh.throughput()[2]).isCloseTo(5e8, Offset.offset(1e-3));
+    assertThat(jmh.throughput()[3]).isCloseTo(500, Offset.offset(1e-9));
+    assertThat(jmh.throughput()[4]).isCloseTo(0.5, Offset.offset(1e-9));
+  }
+
+  @Test
+  void emptyResults() throws IOException {
+    final JmhResults jmh = JmhResults.read(new StringReader("[ ]"));
+    assertThat(jmh.size()).isZero();
+    assertThat(jmh.offsets()).containsExactly(0);
+  }
+
+  @Test
+  void badDocuments() {
+    assertThatThrownBy(() -> JmhResults.read(new StringReader("{}")))
+        .isInstanceOf(IOException.class);
+
+    assertThatThrownBy(() -> JmhResults.read(new StringReader("[{\"benchmark\" : \"x\"")))
+        .isInstanceOf(IOException.class);
+
+    assertThatThrownBy(() -> JmhResults.read(new StringReader("[{\"benchmark\" : \"x\"}]")))
+        .isInstanceOf(IOException.class);
+
+    final String bytes =
+        document(Collections.singletonList(result("a", "thrpt", 1, "1.0", "bytes/s", "")));
+    assertThatThrownBy(() -> JmhResults.read(new StringReader(bytes)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.LoadSweep;
+import com.codahale.usl4j.Measurement;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class LoadSweepTest {
+
+  private final LoadSweep sweep =
+      new LoadSweep(
+              () -> {
+                Thread.sleep(5);
+                return null;
+              })
+          .withWarmup(Duration.ofMillis(50))
+          .withDuration(Duration.ofMillis(300));
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> sweep.withWarmup(Duration.ofSeconds(-1)))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> sweep.withDuration(Duration.ZERO))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> sweep.run(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void measuresOneLevel() throws Exception {
+    final Measurement m = sweep.measure(2);
+    assertThat(m.concurrency()).isCloseTo(2, Offset.offset(0.1));
+    assertThat(m.latency()).isBetween(0.005, 0.01);
+    assertThat(m.throughput()).isBetween(200.0, 450.0);
+  }
+
+  @Test
+  void measuresEachLevel() throws Exception {
+    final List<Measurement> measurements = sweep.run(3);
+    assertThat(measurements).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      assertThat(measurements.get(i).concurrency()).isCloseTo(i + 1, Offset.offset(0.1));
+    }
+    assertThat(measurements.get(2).throughput()).isGreaterThan(measurements.get(0).throughput());
+  }
+
+  @Test
+  void usesTheThreadFactory() throws Exception {
+    final AtomicInteger threads = new AtomicInteger();
+    sweep
+        .withThreadFactory(
+            r -> {
+              threads.incrementAndGet();
+              return new Thread(r);
+            })
+        .measure(4);
+    assertThat(threads).hasValue(4);
+  }
+
+  @Test
+  void failedTask() {
+    final LoadSweep failing =
+        new LoadSweep(
+                () -> {
+                  throw new IOException("woo");
+                })
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(10));
+
+    assertThatThrownBy(() -> failing.measure(2))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IOException.class);
+  }
+
+  @Test
+  void failedTaskWithAnError() {
+    final LoadSweep failing =
+        new LoadSweep(
+                () -> {
+                  throw new AssertionError("woo");
+                })
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(10));
+
+    assertThatThrownBy(() -> failing.measure(2))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(AssertionError.class);
+  }
+
+  @Test
+  void stopsTheOtherWorkersWhenOneFails() {
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+    final LoadSweep failing =
+        new LoadSweep(
+                () -> {
+                  if (Thread.currentThread() == threads.get(0)) {
+                    throw new IOException("woo");
+                  }
+                  Thread.sleep(1);
+                  return null;
+                })
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofSeconds(30))
+            .withThreadFactory(
+                r -> {
+                  final Thread thread = new Thread(r);
+                  threads.add(thread);
+                  return thread;
+                });
+
+    assertThatThrownBy(() -> failing.measure(4))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IOException.class);
+    assertThat(threads).hasSize(4).noneMatch(Thread::isAlive);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.MeasurementRecorder;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class MeasurementRecorderTest {
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new MeasurementRecorder(0, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new MeasurementRecorder(4, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void recordsAndDrains() {
+    final MeasurementRecorder recorder = new MeasurementRecorder(4, 10);
+    assertThat(recorder.drain().size()).isZero();
+
+    assertThat(recorder.record(Measurement.ofConcurrency().andThroughput(1, 10))).isTrue();
+    assertThat(recorder.record(2, 20)).isTrue();
+
+    final MeasurementRecorder.Snapshot snapshot = recorder.drain();
+    assertThat(snapshot.size()).isEqualTo(2);
+    assertThat(snapshot.concurrency()).containsExactly(1, 2);
+    assertThat(snapshot.throughput()).containsExactly(10, 20);
+    assertThat(recorder.drain().size()).isZero();
+  }
+
+  @Test
+  void dropsWhenFull() {
+    final MeasurementRecorder recorder = new MeasurementRecorder(1, 3);
+    for (int i = 0; i < 5; i++) {
+      recorder.record(i, i);
+    }
+    assertThat(recorder.dropped()).isEqualTo(2);
+    assertThat(recorder.drain().concurrency()).containsExactly(0, 1, 2);
+
+    assertThat(recorder.record(5, 5)).isTrue();
+    assertThat(recorder.drain().concurrency()).containsExactly(5);
+  }
+
+  @Test
+  void reusesDrainedBuffers() {
+    final MeasurementRecorder recorder = new MeasurementRecorder(1, 2);
+    for (int round = 0; round < 4; round++) {
+      recorder.record(round, round);
+      recorder.record(round + 1, round + 1);
+      recorder.record(round + 2, round + 2);
+      assertThat(recorder.dropped()).isEqualTo(round + 1);
+      assertThat(recorder.drain().concurrency()).containsExactly(round, round + 1);
+    }
+    assertThat(recorder.drain().size()).isZero();
+  }
+
+  @Test
+  void concurrentProducers() throws Exception {
+    final int threads = 8;
+    final int perThread = 100_000;
+    final MeasurementRecorder recorder = new MeasurementRecorder(threads, perThread);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final Future<?>[] futures = new Future<?>[threads];
+      for (int t = 0; t < threads; t++) {
+        final int id = t;
+        futures[t] =
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < perThread; i++) {
+                    recorder.record(id, i);
+                  }
+                });
+      }
+
+      // drain while the producers are running, and make sure nothing is lost or duplicated
+      final long[] counts = new long[threads];
+      boolean running = true;
+      while (running) {
+        running = !Arrays.stream(futures).allMatch(Future::isDone);
+        final MeasurementRecorder.Snapshot snapshot = recorder.drain();
+        for (double c : snapshot.concurrency()) {
+          counts[(int) c]++;
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      for (long count : counts) {
+        assertThat(count).isLessThanOrEqualTo(perThread);
+      }
+      assertThat(Arrays.stream(counts).sum() + recorder.dropped())
+          .isEqualTo((long) threads * perThread);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
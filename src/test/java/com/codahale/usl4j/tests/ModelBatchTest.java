@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelBatch;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class ModelBatchTest {
+
+  private static final int SETS = 500;
+  private static final int PER_SET = 12;
+
+  private final double[] concurrency = new double[SETS * PER_SET];
+  private final double[] throughput = new double[SETS * PER_SET];
+  private final int[] offsets = new int[SETS + 1];
+
+  ModelBatchTest() {
+    final Random random = new Random(0xC0DA);
+    final Model model = new Model(0.03, 0.0008, 1000);
+    for (int s = 0; s < SETS; s++) {
+      offsets[s] = s * PER_SET;
+      for (int i = 0; i < PER_SET; i++) {
+        final int j = (s * PER_SET) + i;
+        concurrency[j] = 1 + (i * 4);
+        throughput[j] =
+            model.throughputAtConcurrency(concurrency[j]) * (1 + (0.05 * random.nextGaussian()));
+      }
+    }
+    offsets[SETS] = SETS * PER_SET;
+  }
+
+  @Test
+  void fitsLikeBuild() {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final ModelBatch batch =
+          ModelBatch.fit(concurrency, throughput, offsets, FitOptions.defaults(), pool);
+      assertThat(batch.size()).isEqualTo(SETS);
+      for (int i = 0; i < SETS; i++) {
+        final Model expected = Model.build(concurrency, throughput, offsets[i], PER_SET);
+        assertThat(batch.isFitted(i)).isTrue();
+        assertThat(batch.isConverged(i)).isTrue();
+        assertThat(batch.model(i)).isEqualTo(expected);
+        assertThat(batch.sigma(i)).isEqualTo(expected.sigma());
+        assertThat(batch.kappa(i)).isEqualTo(expected.kappa());
+        assertThat(batch.lambda(i)).isEqualTo(expected.lambda());
+        assertThat(batch.residualSumOfSquares(i)).isPositive();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void unfittableSets() {
+    final ModelBatch batch = ModelBatch.fit(concurrency, throughput, new int[] {0, 3, 3, 15});
+    assertThat(batch.size()).isEqualTo(3);
+    assertThat(batch.isFitted(0)).isFalse();
+    assertThat(batch.isFitted(1)).isFalse();
+    assertThat(batch.isFitted(2)).isTrue();
+    assertThat(batch.sigma(0)).isNaN();
+    assertThat(batch.isConverged(0)).isFalse();
+    assertThatThrownBy(() -> batch.model(0)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void unconvergedSets() {
+    final ModelBatch batch =
+        ModelBatch.fit(
+            concurrency,
+            throughput,
+            offsets,
+            FitOptions.defaults().withMaxIterations(1),
+            ForkJoinPool.commonPool());
+    for (int i = 0; i < SETS; i++) {
+      assertThat(batch.isFitted(i)).isTrue();
+      assertThat(batch.isConverged(i)).isFalse();
+      assertThat(batch.sigma(i)).isFinite();
+    }
+  }
+
+  @Test
+  void empty() {
+    assertThat(ModelBatch.fit(concurrency, throughput, new int[] {0}).size()).isZero();
+  }
+
+  @Test
+  void badOffsets() {
+    assertThatThrownBy(() -> ModelBatch.fit(concurrency, throughput, new int[0]))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> ModelBatch.fit(concurrency, throughput, new int[] {12, 6}))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(
+            () -> ModelBatch.fit(concurrency, throughput, new int[] {0, concurrency.length + 1}))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> ModelBatch.fit(concurrency, new double[1], new int[] {0}))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static com.codahale.usl4j.tests.ModelTest.EPSILON;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.ModelFitter;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.assertj.core.data.Percentage;
+import org.junit.jupiter.api.Test;
+
+class ModelFitterTest {
+
+  private static final double[][] POINTS = {
+    {1, 955.16}, {2, 1878.91}, {3, 2688.01}, {4, 3548.68}, {5, 4315.54}, {6, 5130.43},
+    {7, 5931.37}, {8, 6531.08}, {9, 7219.8}, {10, 7867.61}, {11, 8278.71}, {12, 8646.7}
+  };
+
+  private final ModelFitter fitter = new ModelFitter();
+
+  @Test
+  void minMeasurements() {
+    assertThatThrownBy(() -> fitter.fit(Collections.emptyList()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void fitsLikeBuild() {
+    final List<Measurement> measurements =
+        Arrays.stream(POINTS)
+            .map(Measurement.ofConcurrency()::andThroughput)
+            .collect(Collectors.toList());
+    assertThat(fitter.fit(measurements)).isEqualTo(Model.build(measurements));
+  }
+
+  @Test
+  void reuse() {
+    final double[] concurrency = Arrays.stream(POINTS).mapToDouble(p -> p[0]).toArray();
+    final double[] throughput = Arrays.stream(POINTS).mapToDouble(p -> p[1]).toArray();
+    final Model all = Model.build(concurrency, throughput);
+    final Model some = Model.build(concurrency, throughput, 2, 8);
+
+    for (int i = 0; i < 3; i++) {
+      final Model a = fitter.fit(concurrency, throughput);
+      assertThat(a.sigma()).isCloseTo(all.sigma(), EPSILON);
+      assertThat(a.kappa()).isCloseTo(all.kappa(), EPSILON);
+      assertThat(a.lambda()).isCloseTo(all.lambda(), EPSILON);
+
+      final Model b = fitter.fit(concurrency, throughput, 2, 8);
+      assertThat(b.sigma()).isCloseTo(some.sigma(), EPSILON);
+      assertThat(b.kappa()).isCloseTo(some.kappa(), EPSILON);
+      assertThat(b.lambda()).isCloseTo(some.lambda(), EPSILON);
+    }
+  }
+
+  @Test
+  void variableProjection() {
+    final double[] concurrency = Arrays.stream(POINTS).mapToDouble(p -> p[0]).toArray();
+    final double[] throughput = Arrays.stream(POINTS).mapToDouble(p -> p[1]).toArray();
+    final Model expected = Model.build(concurrency, throughput);
+    final ModelFitter projected =
+        new ModelFitter(FitOptions.defaults().withVariableProjection(true));
+
+    final Model model = projected.fit(concurrency, throughput);
+    assertThat(projected.isConverged()).isTrue();
+    assertThat(model.sigma()).isCloseTo(expected.sigma(), EPSILON);
+    assertThat(model.kappa()).isCloseTo(expected.kappa(), EPSILON);
+    assertThat(model.lambda()).isCloseTo(expected.lambda(), EPSILON);
+    assertThat(projected.result().lambdaStandardError()).isPositive();
+  }
+
+  @Test
+  void initialGuess() {
+    final List<Measurement> measurements =
+        Arrays.stream(POINTS)
+            .map(Measurement.ofConcurrency()::andThroughput)
+            .collect(Collectors.toList());
+    final Model cold = Model.build(measurements);
+    final Model warm = Model.build(measurements, new Model(0.02, 0.0005, 990));
+    assertThat(warm.sigma()).isCloseTo(cold.sigma(), EPSILON);
+    assertThat(warm.kappa()).isCloseTo(cold.kappa(), EPSILON);
+    assertThat(warm.lambda()).isCloseTo(cold.lambda(), EPSILON);
+  }
+
+  @Test
+  void unusableInitialGuess() {
+    final List<Measurement> measurements =
+        Arrays.stream(POINTS)
+            .map(Measurement.ofConcurrency()::andThroughput)
+            .collect(Collectors.toList());
+    final Model cold = Model.build(measurements);
+    // puts a pole at N=2
+    final Model warm = fitter.fit(measurements, new Model(-1, 0, 990));
+    assertThat(warm.sigma()).isCloseTo(cold.sigma(), EPSILON);
+    assertThat(warm.kappa()).isCloseTo(cold.kappa(), EPSILON);
+    assertThat(warm.lambda()).isCloseTo(cold.lambda(), EPSILON);
+  }
+
+  @Test
+  void warmStart() {
+    final double[] concurrency = Arrays.stream(POINTS).mapToDouble(p -> p[0]).toArray();
+    final double[] throughput = Arrays.stream(POINTS).mapToDouble(p -> p[1]).toArray();
+    final Model cold = fitter.fit(concurrency, throughput);
+
+    fitter.setWarmStart(true);
+    for (int i = 0; i < 3; i++) {
+      final Model warm = fitter.fit(concurrency, throughput);
+      assertThat(warm.sigma()).isCloseTo(cold.sigma(), EPSILON);
+      assertThat(warm.kappa()).isCloseTo(cold.kappa(), EPSILON);
+      assertThat(warm.lambda()).isCloseTo(cold.lambda(), EPSILON);
+    }
+  }
+
+  @Test
+  void iterationBudget() {
+    final double[] concurrency = Arrays.stream(POINTS).mapToDouble(p -> p[0]).toArray();
+    final double[] throughput = Arrays.stream(POINTS).mapToDouble(p -> p[1]).toArray();
+    final ModelFitter limited = new ModelFitter(FitOptions.defaults().withMaxIterations(1));
+    final Model model = limited.fit(concurrency, throughput);
+    assertThat(limited.isConverged()).isFalse();
+    assertThat(model.lambda())
+        .isCloseTo(Model.build(concurrency, throughput).lambda(), Percentage.withPercentage(5));
+
+    fitter.fit(concurrency, throughput);
+    assertThat(fitter.isConverged()).isTrue();
+  }
+
+  @Test
+  void deadline() {
+    // enough measurements that each iteration takes much longer than the deadline
+    final double[] concurrency = new double[100_000];
+    final double[] throughput = new double[100_000];
+    for (int i = 0; i < concurrency.length; i++) {
+      concurrency[i] = POINTS[i % POINTS.length][0];
+      throughput[i] = POINTS[i % POINTS.length][1] * (1 + (i % 7) / 100.0);
+    }
+    final ModelFitter limited =
+        new ModelFitter(FitOptions.defaults().withDeadline(Duration.ofNanos(1)));
+    final Model model = limited.fit(concurrency, throughput);
+    assertThat(limited.isConverged()).isFalse();
+    assertThat(model.lambda()).isPositive();
+  }
+}
@@ -18,10 +18,13 @@ package com.codahale.usl4j.tests;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.codahale.usl4j.FitResult;
 import com.codahale.usl4j.Measurement;
 import com.codahale.usl4j.Model;
+import com.codahale.usl4j.benchmarks.Benchmarks;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 import org.assertj.core.data.Offset;
 import org.assertj.core.data.Percentage;
@@ -95,6 +98,83 @@ class ModelTest {
     assertThat(model.sigma()).isCloseTo(other.sigma(), EPSILON);
   }
 
+  @Test
+  void fewerEvaluationsThanANumericalJacobian() {
+    final List<Measurement> measurements =
+        Arrays.stream(CISCO)
+            .map(Measurement.ofConcurrency()::andThroughput)
+            .collect(Collectors.toList());
+    final FitResult fit = Model.fit(measurements);
+
+    // estimating the Jacobian numerically takes three more passes over the measurements per
+    // iteration, while the analytic Jacobian is calculated in the same pass as the residuals
+    final int[] numerical = new int[1];
+    final Model other = Benchmarks.buildNumerical(measurements, numerical);
+    assertThat(other.sigma()).isCloseTo(fit.model().sigma(), EPSILON);
+    assertThat(fit.evaluations()).isLessThan(numerical[0]);
+  }
+
+  @Test
+  void buildFromArrays() {
+    final double[] concurrency = Arrays.stream(CISCO).mapToDouble(p -> p[0]).toArray();
+    final double[] throughput = Arrays.stream(CISCO).mapToDouble(p -> p[1]).toArray();
+    final Model other = Model.build(concurrency, throughput);
+    assertThat(other.sigma()).isCloseTo(model.sigma(), EPSILON);
+    assertThat(other.kappa()).isCloseTo(model.kappa(), EPSILON);
+    assertThat(other.lambda()).isCloseTo(model.lambda(), EPSILON);
+  }
+
+  @Test
+  void buildFromSlices() {
+    final double[] concurrency = new double[CISCO.length + 10];
+    final double[] throughput = new double[CISCO.length + 10];
+    for (int i = 0; i < CISCO.length; i++) {
+      concurrency[i + 5] = CISCO[i][0];
+      throughput[i + 5] = CISCO[i][1];
+    }
+    final Model other = Model.build(concurrency, throughput, 5, CISCO.length);
+    assertThat(other.sigma()).isCloseTo(model.sigma(), EPSILON);
+    assertThat(other.kappa()).isCloseTo(model.kappa(), EPSILON);
+    assertThat(other.lambda()).isCloseTo(model.lambda(), EPSILON);
+  }
+
+  @Test
+  void badSlices() {
+    final double[] values = new double[10];
+
+    assertThatThrownBy(() -> Model.build(values, new double[9]))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> Model.build(values, values, 5, 6))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> Model.build(values, values, -1, 6))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> Model.build(values, values, 0, 5))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void buildLinearized() {
+    final Model linearized =
+        Model.buildLinearized(
+            Arrays.stream(CISCO)
+                .map(Measurement.ofConcurrency()::andThroughput)
+                .collect(Collectors.toList()));
+    assertThat(linearized.sigma()).isCloseTo(0.021485494314204847, EPSILON);
+    assertThat(linearized.kappa()).isCloseTo(8.609102757664862E-4, EPSILON);
+    assertThat(linearized.lambda()).isCloseTo(963.4803371664597, EPSILON);
+  }
+
+  @Test
+  void buildLinearizedWithTooFewDistinctValues() {
+    final double[] concurrency = {1, 1, 1, 2, 2, 2};
+    final double[] throughput = {10, 11, 12, 20, 21, 22};
+    assertThatThrownBy(() -> Model.buildLinearized(concurrency, throughput, 0, 6))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
   @Test
   void sigma() {
     assertThat(model.sigma()).isCloseTo(BOOK_SIGMA, BOOK_TOLERANCE);
@@ -139,9 +219,34 @@ class ModelTest {
 
   @Test
   void throughputAtConcurrency() {
-    assertThat(model.throughputAtConcurrency(1)).isCloseTo(995.648772003358, EPSILON);
-    assertThat(model.throughputAtConcurrency(20)).isCloseTo(11063.63312570436, EPSILON);
-    assertThat(model.throughputAtConcurrency(35)).isCloseTo(12341.745655201905, EPSILON);
+    assertThat(model.throughputAtConcurrency(1)).isCloseTo(995.648785792002, EPSILON);
+    assertThat(model.throughputAtConcurrency(20)).isCloseTo(11063.63311840581, EPSILON);
+    assertThat(model.throughputAtConcurrency(35)).isCloseTo(12341.74567336547, EPSILON);
+  }
+
+  @Test
+  void bulkPredictions() {
+    final double[] in = {1, 20, 35, 0.5, 400, 500, 600};
+    final double[] out = new double[in.length + 1];
+
+    model.throughputAtConcurrency(in, out);
+    for (int i = 0; i < in.length; i++) {
+      assertThat(out[i]).isEqualTo(model.throughputAtConcurrency(in[i]));
+    }
+
+    model.latencyAtConcurrency(in, out);
+    for (int i = 0; i < in.length; i++) {
+      assertThat(out[i]).isEqualTo(model.latencyAtConcurrency(in[i]));
+    }
+
+    model.latencyAtThroughput(in, out);
+    for (int i = 0; i < in.length; i++) {
+      assertThat(out[i]).isEqualTo(model.latencyAtThroughput(in[i]));
+    }
+    assertThat(out[in.length]).isZero();
+
+    assertThatThrownBy(() -> model.throughputAtConcurrency(in, new double[1]))
+        .isInstanceOf(IllegalArgumentException.class);
   }
 
   @Test
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static com.codahale.usl4j.tests.ModelTest.EPSILON;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.FitResult;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.MultiStartFitter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class MultiStartFitterTest {
+
+  private static final double[][] POINTS = {
+    {1, 955.16}, {2, 1878.91}, {3, 2688.01}, {4, 3548.68}, {5, 4315.54}, {6, 5130.43},
+    {7, 5931.37}, {8, 6531.08}, {9, 7219.8}, {10, 7867.61}, {11, 8278.71}, {12, 8646.7}
+  };
+
+  private final List<Measurement> measurements =
+      Arrays.stream(POINTS)
+          .map(Measurement.ofConcurrency()::andThroughput)
+          .collect(Collectors.toList());
+
+  @Test
+  void badStarts() {
+    assertThatThrownBy(() -> new MultiStartFitter(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void minMeasurements() {
+    assertThatThrownBy(() -> new MultiStartFitter(4).fit(Collections.emptyList()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void fitsLikeBuild() {
+    final Model expected = Model.build(measurements);
+    final FitResult result = new MultiStartFitter(16).fit(measurements);
+    assertThat(result.isConverged()).isTrue();
+    assertThat(result.model().sigma()).isCloseTo(expected.sigma(), EPSILON);
+    assertThat(result.model().kappa()).isCloseTo(expected.kappa(), EPSILON);
+    assertThat(result.model().lambda()).isCloseTo(expected.lambda(), EPSILON);
+  }
+
+  @Test
+  void singleStart() {
+    assertThat(new MultiStartFitter(1).fit(measurements).model())
+        .isEqualTo(Model.build(measurements));
+  }
+
+  @Test
+  void deterministic() {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final MultiStartFitter fitter = new MultiStartFitter(8, FitOptions.defaults(), pool);
+      final double[] concurrency = new double[30];
+      final double[] throughput = new double[30];
+      noisy(new Random(1), concurrency, throughput);
+      final Model model = fitter.fit(concurrency, throughput, 0, 30).model();
+      for (int i = 0; i < 10; i++) {
+        assertThat(fitter.fit(concurrency, throughput, 0, 30).model()).isEqualTo(model);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void neverWorseThanASingleStart() {
+    final Random random = new Random(42);
+    final MultiStartFitter fitter = new MultiStartFitter(16);
+    final double[] concurrency = new double[20];
+    final double[] throughput = new double[20];
+    for (int i = 0; i < 50; i++) {
+      noisy(random, concurrency, throughput);
+      final FitResult single = Model.fit(concurrency, throughput, 0, 20, FitOptions.defaults());
+      final FitResult multi = fitter.fit(concurrency, throughput, 0, 20);
+      assertThat(multi.residualSumOfSquares())
+          .isLessThanOrEqualTo(single.residualSumOfSquares() * (1 + 1e-9));
+    }
+  }
+
+  private static void noisy(Random random, double[] concurrency, double[] throughput) {
+    final Model model = new Model(0.05, 0.002, 1000);
+    for (int i = 0; i < concurrency.length; i++) {
+      concurrency[i] = 1 + (i * 3);
+      throughput[i] =
+          model.throughputAtConcurrency(concurrency[i]) * (1 + (0.3 * random.nextGaussian()));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+import com.codahale.usl4j.FitResult;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.OnlineEstimator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class OnlineEstimatorTest {
+
+  private static final Model INITIAL = new Model(0.1, 0.005, 700);
+  private static final Model TRUTH = new Model(0.05, 0.002, 1000);
+  private static final Model DRIFTED = new Model(0.08, 0.001, 800);
+
+  private final Random random = new Random(1);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new OnlineEstimator(INITIAL, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new OnlineEstimator(INITIAL, 1.1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new OnlineEstimator(new Model(0.1, 0.01, 0), 1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void initialState() {
+    final OnlineEstimator estimator = new OnlineEstimator(INITIAL, 1);
+    assertThat(estimator.count()).isZero();
+    assertThat(estimator.model()).isEqualTo(INITIAL);
+    assertThat(estimator.sigmaStandardError()).isNaN();
+  }
+
+  @Test
+  void converges() {
+    final OnlineEstimator estimator = new OnlineEstimator(INITIAL, 1);
+    feed(estimator, TRUTH, 20_000);
+    assertThat(estimator.count()).isEqualTo(20_000);
+    assertClose(estimator.model(), TRUTH, 5);
+    assertThat(estimator.sigmaStandardError()).isPositive().isLessThan(0.01);
+    assertThat(estimator.kappaStandardError()).isPositive().isLessThan(0.0001);
+    assertThat(estimator.lambdaStandardError()).isPositive().isLessThan(20);
+  }
+
+  @Test
+  void matchesBatchFitFromAnOffGuess() {
+    final Model truth = new Model(0.0267, 7.69e-4, 995.6);
+    final OnlineEstimator estimator = new OnlineEstimator(new Model(0.05, 1e-3, 900), 1);
+    final List<Measurement> measurements = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      final double n = 1 + random.nextInt(64);
+      final double x = truth.throughputAtConcurrency(n) * (1 + (0.05 * random.nextGaussian()));
+      estimator.update(n, x);
+      measurements.add(Measurement.ofConcurrency().andThroughput(n, x));
+    }
+
+    final FitResult fit = Model.fit(measurements);
+    assertThat(fit.isConverged()).isTrue();
+    final Model batch = fit.model();
+    final Model online = estimator.model();
+    assertThat(online.sigma()).isCloseTo(batch.sigma(), within(estimator.sigmaStandardError()));
+    assertThat(online.kappa()).isCloseTo(batch.kappa(), within(estimator.kappaStandardError()));
+    assertThat(online.lambda()).isCloseTo(batch.lambda(), within(estimator.lambdaStandardError()));
+  }
+
+  @Test
+  void tracksDrift() {
+    final OnlineEstimator estimator = new OnlineEstimator(INITIAL, 0.999);
+    feed(estimator, TRUTH, 20_000);
+    assertClose(estimator.model(), TRUTH, 5);
+    feed(estimator, DRIFTED, 20_000);
+    assertClose(estimator.model(), DRIFTED, 5);
+  }
+
+  @Test
+  void ignoresPoles() {
+    final OnlineEstimator estimator = new OnlineEstimator(new Model(-0.5, 0, 1000), 1);
+    assertThat(estimator.update(Measurement.ofConcurrency().andThroughput(10, 100))).isFalse();
+    assertThat(estimator.count()).isZero();
+  }
+
+  private void feed(OnlineEstimator estimator, Model model, int count) {
+    for (int i = 0; i < count; i++) {
+      final double n = 1 + random.nextInt(64);
+      estimator.update(n, model.throughputAtConcurrency(n) * (1 + (0.05 * random.nextGaussian())));
+    }
+  }
+
+  private static void assertClose(Model actual, Model expected, double percentage) {
+    assertThat(actual.sigma()).isCloseTo(expected.sigma(), withinPercentage(percentage));
+    assertThat(actual.kappa()).isCloseTo(expected.kappa(), withinPercentage(percentage));
+    assertThat(actual.lambda()).isCloseTo(expected.lambda(), withinPercentage(percentage));
+  }
+}
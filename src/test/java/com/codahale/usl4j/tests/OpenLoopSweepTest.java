@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.LoadSweep;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.OpenLoopSweep;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+class OpenLoopSweepTest {
+
+  private static final Duration WARMUP = Duration.ofMillis(50);
+  private static final Duration DURATION = Duration.ofMillis(500);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new OpenLoopSweep(() -> null, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    final OpenLoopSweep sweep = new OpenLoopSweep(() -> null, 1);
+    assertThatThrownBy(() -> sweep.measure(0)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> sweep.run(100, 0, 200)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> sweep.run(200, 100, 100))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void holdsTheRate() throws Exception {
+    final Measurement m =
+        new OpenLoopSweep(
+                () -> {
+                  Thread.sleep(1);
+                  return null;
+                },
+                16)
+            .withWarmup(WARMUP)
+            .withDuration(DURATION)
+            .measure(1000);
+    assertThat(m.throughput()).isBetween(900.0, 1100.0);
+    assertThat(m.latency()).isBetween(0.001, 0.01);
+  }
+
+  @Test
+  void correctsForCoordinatedOmission() throws Exception {
+    // a system which stalls for the first half of every 100ms, and otherwise responds immediately
+    final long origin = System.nanoTime();
+    final Object lock = new Object();
+    final Callable<Object> stalling =
+        () -> {
+          synchronized (lock) {
+            final long ms = ((System.nanoTime() - origin) / 1_000_000) % 100;
+            if (ms < 50) {
+              Thread.sleep(50 - ms);
+            }
+          }
+          return null;
+        };
+
+    // a closed-loop caller mostly sees the fast responses
+    final Measurement closed =
+        new LoadSweep(stalling).withWarmup(WARMUP).withDuration(DURATION).measure(1);
+    assertThat(closed.latency()).isLessThan(0.001);
+
+    // constant arrivals spend half their time waiting out a stall, for a mean of ~12.5ms
+    final Measurement open =
+        new OpenLoopSweep(stalling, 64).withWarmup(WARMUP).withDuration(DURATION).measure(1000);
+    assertThat(open.latency()).isBetween(0.008, 0.02);
+  }
+
+  @Test
+  void countsCallsWhichFinishAfterThePeriod() throws Exception {
+    // one worker taking at least 2ms per call can't keep up with a call every 1ms, so the backlog,
+    // and with it the latency, grows for as long as the period lasts
+    final Callable<Object> slow =
+        () -> {
+          Thread.sleep(2);
+          return null;
+        };
+    final Measurement shorter =
+        new OpenLoopSweep(slow, 1)
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(100))
+            .measure(1000);
+    final Measurement longer =
+        new OpenLoopSweep(slow, 1)
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(300))
+            .measure(1000);
+
+    assertThat(shorter.throughput()).isLessThanOrEqualTo(500.0);
+    assertThat(longer.throughput()).isLessThanOrEqualTo(500.0);
+    assertThat(shorter.latency()).isGreaterThan(0.04);
+    assertThat(longer.latency()).isGreaterThan(shorter.latency() * 2);
+  }
+
+  @Test
+  void sweepsRates() throws Exception {
+    final List<Measurement> measurements =
+        new OpenLoopSweep(() -> null, 4)
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(100))
+            .run(1000, 1000, 3000);
+    assertThat(measurements).hasSize(3);
+    assertThat(measurements.get(2).throughput()).isBetween(2700.0, 3300.0);
+  }
+
+  @Test
+  void failedTask() {
+    final OpenLoopSweep failing =
+        new OpenLoopSweep(
+                () -> {
+                  throw new IOException("woo");
+                },
+                2)
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofMillis(10));
+
+    assertThatThrownBy(() -> failing.measure(100))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IOException.class);
+  }
+
+  @Test
+  void stopsTheOtherWorkersWhenOneFails() {
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+    final OpenLoopSweep failing =
+        new OpenLoopSweep(
+                () -> {
+                  if (Thread.currentThread() == threads.get(0)) {
+                    throw new IOException("woo");
+                  }
+                  return null;
+                },
+                4)
+            .withWarmup(Duration.ZERO)
+            .withDuration(Duration.ofSeconds(30))
+            .withThreadFactory(
+                r -> {
+                  final Thread thread = new Thread(r);
+                  threads.add(thread);
+                  return thread;
+                });
+
+    assertThatThrownBy(() -> failing.measure(100))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IOException.class);
+    assertThat(threads).hasSize(4).noneMatch(Thread::isAlive);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.FitOptions;
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.RollingModel;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class RollingModelTest {
+
+  private static final Offset<Double> EPSILON = Offset.offset(1e-6);
+  private static final Model OLD = new Model(0.03, 0.0008, 1000);
+  private static final Model NEW = new Model(0.05, 0.001, 500);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new RollingModel(5)).isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new RollingModel(10, Duration.ZERO, FitOptions.defaults()))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new RollingModel(10).schedule(null, Duration.ofSeconds(1)))
+        .isInstanceOf(NullPointerException.class);
+  }
+
+  @Test
+  void tooFewMeasurements() {
+    final RollingModel rolling = new RollingModel(10);
+    assertThat(rolling.refit()).isFalse();
+    assertThat(rolling.model()).isEmpty();
+
+    add(rolling, OLD, 5);
+    assertThat(rolling.refit()).isFalse();
+    assertThat(rolling.model()).isEmpty();
+  }
+
+  @Test
+  void keepsTheMostRecentMeasurements() {
+    final RollingModel rolling = new RollingModel(20);
+    add(rolling, OLD, 20);
+    assertThat(rolling.refit()).isTrue();
+    assertClose(rolling.model().orElseThrow(AssertionError::new), OLD);
+
+    add(rolling, NEW, 20);
+    assertThat(rolling.size()).isEqualTo(20);
+    assertThat(rolling.refit()).isTrue();
+    assertClose(rolling.model().orElseThrow(AssertionError::new), NEW);
+  }
+
+  @Test
+  void ignoresOldMeasurements() throws InterruptedException {
+    final RollingModel rolling = new RollingModel(20, Duration.ofMillis(50), FitOptions.defaults());
+    add(rolling, OLD, 20);
+    Thread.sleep(100);
+    assertThat(rolling.size()).isEqualTo(20);
+    assertThat(rolling.refit()).isFalse();
+    assertThat(rolling.model()).isEmpty();
+  }
+
+  @Test
+  void keepsThePreviousModelOnFailure() {
+    final RollingModel rolling =
+        new RollingModel(20, null, FitOptions.defaults().withMaxIterations(0));
+    add(rolling, OLD, 20);
+    assertThat(rolling.refit()).isFalse();
+    assertThat(rolling.model()).isEmpty();
+  }
+
+  @Test
+  void scheduledRefits() throws InterruptedException {
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final RollingModel rolling = new RollingModel(20);
+      final ScheduledFuture<?> future = rolling.schedule(executor, Duration.ofMillis(1));
+      add(rolling, OLD, 20);
+      for (int i = 0; i < 1_000 && !rolling.model().isPresent(); i++) {
+        Thread.sleep(5);
+      }
+      future.cancel(false);
+      assertClose(rolling.model().orElseThrow(AssertionError::new), OLD);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void add(RollingModel rolling, Model model, int count) {
+    for (int i = 0; i < count; i++) {
+      final double n = 1 + (i * 2);
+      rolling.add(Measurement.ofConcurrency().andThroughput(n, model.throughputAtConcurrency(n)));
+    }
+  }
+
+  private static void assertClose(Model actual, Model expected) {
+    assertThat(actual.sigma()).isCloseTo(expected.sigma(), EPSILON);
+    assertThat(actual.kappa()).isCloseTo(expected.kappa(), EPSILON);
+    assertThat(actual.lambda()).isCloseTo(expected.lambda(), Offset.offset(1e-3));
+  }
+}
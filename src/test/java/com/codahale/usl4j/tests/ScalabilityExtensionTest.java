@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectMethod;
+
+import com.codahale.usl4j.junit.ScalabilityTest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.junit.platform.testkit.engine.Events;
+
+class ScalabilityExtensionTest {
+
+  // set when the fixtures are run by the tests below, rather than as part of the suite
+  private static final String FIXTURES = "usl4j.tests.fixtures";
+
+  @TempDir Path baselines;
+
+  // sleeping has no contention or coherency costs, so it should scale linearly
+  @ScalabilityTest(warmupMillis = 20, durationMillis = 200, maxSigma = 0.5, maxKappa = 0.05)
+  void scalesLinearly() throws InterruptedException {
+    Thread.sleep(1);
+  }
+
+  @Test
+  void callsTheMethodConcurrently() {
+    Fixtures.IN_FLIGHT.set(0);
+    Fixtures.MOST_IN_FLIGHT.set(0);
+    run("concurrent").assertStatistics(stats -> stats.started(1).succeeded(1));
+    assertThat(Fixtures.MOST_IN_FLIGHT).hasValue(12);
+  }
+
+  @Test
+  void failsOnContention() {
+    assertThat(failure(run("contended"))).hasMessageContaining("σ is above 0.5");
+  }
+
+  @Test
+  void failsOnCoherency() {
+    assertThat(failure(run("crosstalk"))).hasMessageContaining("κ is above 0.05");
+  }
+
+  @Test
+  void failsOnALowMaxConcurrency() {
+    assertThat(failure(run("peaksEarly"))).hasMessageContaining("maxConcurrency is below 8.0");
+  }
+
+  @Test
+  void failsOnAnUnconvergedFit() {
+    assertThat(failure(run("unconverged"))).hasMessageContaining("Unable to fit a model");
+  }
+
+  @Test
+  void recordsAndComparesWithTheBaseline() throws IOException {
+    // sleeping's model may well have κ <= 0 and no peak, in which case the baseline compares
+    // speedups
+    run("baseline").assertStatistics(stats -> stats.started(1).succeeded(1));
+    final Properties recorded = load(baselines.resolve("baselines.properties"));
+    assertThat(recorded).containsKey(Fixtures.class.getName() + "#baseline.kappa");
+
+    run("baseline").assertStatistics(stats -> stats.started(1).succeeded(1));
+  }
+
+  @Test
+  void failsOnADropFromTheBaseline() throws IOException {
+    // Nmax ≈ 99.5, where the fixture peaks at 2
+    final Properties properties = new Properties();
+    final String key = Fixtures.class.getName() + "#droppedFromTheBaseline";
+    properties.setProperty(key + ".sigma", "0.01");
+    properties.setProperty(key + ".kappa", "0.0001");
+    properties.setProperty(key + ".lambda", "1000");
+    try (OutputStream out = Files.newOutputStream(baselines.resolve("baselines.properties"))) {
+      properties.store(out, null);
+    }
+
+    assertThat(failure(run("droppedFromTheBaseline"))).hasMessageContaining("baseline");
+  }
+
+  private Events run(String method) {
+    return EngineTestKit.engine("junit-jupiter")
+        .selectors(selectMethod(Fixtures.class, method))
+        .configurationParameter(FIXTURES, "true")
+        .configurationParameter("usl4j.baselineDirectory", baselines.toString())
+        .execute()
+        .testEvents();
+  }
+
+  private static Throwable failure(Events events) {
+    events.assertStatistics(stats -> stats.started(1).failed(1));
+    return events
+        .failed()
+        .stream()
+        .findFirst()
+        .flatMap(e -> e.getPayload(TestExecutionResult.class))
+        .flatMap(TestExecutionResult::getThrowable)
+        .orElseThrow(IllegalStateException::new);
+  }
+
+  private static Properties load(Path path) throws IOException {
+    final Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(path)) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+  static final class OnlyWhenSelected implements ExecutionCondition {
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+      return context.getConfigurationParameter(FIXTURES).isPresent()
+          ? ConditionEvaluationResult.enabled("run by ScalabilityExtensionTest")
+          : ConditionEvaluationResult.disabled("only run by ScalabilityExtensionTest");
+    }
+  }
+
+  @ExtendWith(OnlyWhenSelected.class)
+  static class Fixtures {
+    static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    static final AtomicInteger MOST_IN_FLIGHT = new AtomicInteger();
+    private static final Object LOCK = new Object();
+
+    @ScalabilityTest(threads = {1, 2, 4, 6, 8, 12}, warmupMillis = 20, durationMillis = 100)
+    void concurrent() throws InterruptedException {
+      final int n = IN_FLIGHT.incrementAndGet();
+      MOST_IN_FLIGHT.accumulateAndGet(n, Math::max);
+      Thread.sleep(1);
+      IN_FLIGHT.decrementAndGet();
+    }
+
+    // fully serialized, so σ ≈ 1
+    @ScalabilityTest(warmupMillis = 20, durationMillis = 100, maxSigma = 0.5)
+    void contended() throws InterruptedException {
+      synchronized (LOCK) {
+        Thread.sleep(1);
+      }
+    }
+
+    @ScalabilityTest(warmupMillis = 20, durationMillis = 100, maxKappa = 0.05)
+    void crosstalk() {
+      slowsWithConcurrency();
+    }
+
+    @ScalabilityTest(warmupMillis = 20, durationMillis = 100, minMaxConcurrency = 8)
+    void peaksEarly() {
+      slowsWithConcurrency();
+    }
+
+    @ScalabilityTest(warmupMillis = 20, durationMillis = 100, maxIterations = 1)
+    void unconverged() throws InterruptedException {
+      Thread.sleep(1);
+    }
+
+    @ScalabilityTest(
+        warmupMillis = 20,
+        durationMillis = 100,
+        baseline = "baselines.properties",
+        tolerance = 0.5)
+    void baseline() throws InterruptedException {
+      Thread.sleep(1);
+    }
+
+    @ScalabilityTest(
+        warmupMillis = 20,
+        durationMillis = 100,
+        baseline = "baselines.properties",
+        tolerance = 0.5)
+    void droppedFromTheBaseline() {
+      slowsWithConcurrency();
+    }
+
+    // each call takes (4 + N²)/4 ms at a concurrency of N, so σ ≈ κ ≈ 0.2 and Nmax ≈ 2
+    private static void slowsWithConcurrency() {
+      final int n = IN_FLIGHT.incrementAndGet();
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(250L * (4 + (n * n))));
+      IN_FLIGHT.decrementAndGet();
+    }
+  }
+}
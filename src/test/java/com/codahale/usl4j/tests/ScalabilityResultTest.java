@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.jmh.ScalabilityResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class ScalabilityResultTest {
+
+  private static final Model MODEL = new Model(0.02, 0.0005, 1000);
+
+  @Test
+  void fitsAModel() {
+    final ScalabilityResult result = result(6, MODEL::throughputAtConcurrency);
+
+    assertThat(result.model()).isPresent();
+    assertThat(result.model().get().sigma()).isCloseTo(MODEL.sigma(), Offset.offset(1e-6));
+    assertThat(result).hasToString("com.example.Bench.run:thrpt " + result.model().get());
+  }
+
+  @Test
+  void tooFewMeasurements() {
+    final ScalabilityResult result = result(5, MODEL::throughputAtConcurrency);
+
+    assertThat(result.measurements()).hasSize(5);
+    assertThat(result.model()).isEmpty();
+    assertThat(result).hasToString("com.example.Bench.run:thrpt");
+  }
+
+  @Test
+  void scoresWhichCantBeFit() {
+    // scores which swing between extremes look nothing like the USL, and overflow the fit
+    final ScalabilityResult result = result(6, n -> n % 2 == 0 ? 1e300 : 1);
+
+    assertThat(result.measurements()).hasSize(6);
+    assertThat(result.model()).isEmpty();
+  }
+
+  private static ScalabilityResult result(int threads, IntToDoubleFunction throughput) {
+    final List<Measurement> measurements = new ArrayList<>();
+    for (int n = 1; n <= threads; n++) {
+      measurements.add(Measurement.ofConcurrency().andThroughput(n, throughput.applyAsDouble(n)));
+    }
+    return new ScalabilityResult(
+        "com.example.Bench.run", "thrpt", Collections.emptyMap(), measurements);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.benchmarks.Benchmarks;
+import com.codahale.usl4j.jmh.ScalabilityResult;
+import com.codahale.usl4j.jmh.ScalabilityRunner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+class ScalabilityRunnerTest {
+
+  private final Options options =
+      new OptionsBuilder()
+          .include(Benchmarks.class.getName() + ".build$")
+          .param("size", "10")
+          .forks(0)
+          .warmupIterations(0)
+          .measurementIterations(1)
+          .measurementTime(TimeValue.milliseconds(50))
+          .build();
+
+  @Test
+  void badThreadCounts() {
+    final ScalabilityRunner runner = new ScalabilityRunner(options);
+
+    assertThatThrownBy(() -> runner.withThreads(1, 2, 4, 8))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> runner.withThreads(1, 1, 2, 2, 3, 3, 4, 5))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> runner.withThreads(0, 1, 2, 3, 4, 5))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void fitsAModelPerBenchmark(@TempDir Path dir) throws Exception {
+    final Path results = dir.resolve("jmh-result.json");
+    final List<ScalabilityResult> fitted =
+        new ScalabilityRunner(options).withThreads(1, 2, 3, 4, 5, 6).run(results);
+
+    assertThat(fitted).hasSize(1);
+    final ScalabilityResult result = fitted.get(0);
+    assertThat(result.benchmark()).isEqualTo(Benchmarks.class.getName() + ".build");
+    assertThat(result.mode()).isEqualTo("avgt");
+    assertThat(result.params()).containsEntry("size", "10");
+    assertThat(result.measurements()).hasSize(6);
+    assertThat(result.measurements().get(5).concurrency()).isEqualTo(6);
+    assertThat(result.model()).isPresent();
+
+    final String jmh = new String(Files.readAllBytes(results), StandardCharsets.UTF_8);
+    assertThat(jmh).contains("\"threads\" : 6");
+
+    final String usl =
+        new String(
+            Files.readAllBytes(dir.resolve("jmh-result.usl.json")), StandardCharsets.UTF_8);
+    assertThat(usl)
+        .contains("\"benchmark\": \"" + Benchmarks.class.getName() + ".build\"")
+        .contains("\"params\": {\"size\": \"10\"}")
+        .contains("\"threads\": [1, 2, 3, 4, 5, 6]")
+        .contains("\"sigma\": ")
+        .contains("\"maxConcurrency\": ");
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.Measurement;
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.UslLimiter;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class UslLimiterTest {
+
+  private static final Model MODEL = new Model(0.02, 0.0005, 1000);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new UslLimiter(MODEL, Duration.ZERO, 0.99, 1, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslLimiter(MODEL, null, 0.99, 0, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslLimiter(MODEL, null, 0.99, 10, 5))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslLimiter(MODEL, null, 1.5, 1, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void limitFromMaxConcurrency() {
+    assertThat(new UslLimiter(MODEL).limit()).isEqualTo(44);
+    assertThat(new UslLimiter(MODEL, null, 0.99, 1, 20).limit()).isEqualTo(20);
+    assertThat(new UslLimiter(MODEL, null, 0.99, 50, 100).limit()).isEqualTo(50);
+    assertThat(new UslLimiter(new Model(0, 0, 1000)).limit()).isEqualTo(Integer.MAX_VALUE);
+
+    // a slightly negative κ means no coherency costs, not a limit of one
+    final Model negative = new Model(0.02, -1e-9, 1000);
+    assertThat(new UslLimiter(negative).limit()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(new UslLimiter(negative, null, 0.99, 1, 200).limit()).isEqualTo(200);
+  }
+
+  @Test
+  void limitFromSla() {
+    // R(N) = (1 + σ(N-1) + κN(N-1))/λ = 2ms at N ≈ 29.7
+    assertThat(new UslLimiter(MODEL, Duration.ofMillis(2), 0.99, 1, 1000).limit()).isEqualTo(29);
+
+    // a loose SLA doesn't raise the limit past the maximum concurrency
+    assertThat(new UslLimiter(MODEL, Duration.ofSeconds(1), 0.99, 1, 1000).limit()).isEqualTo(44);
+
+    // an SLA faster than a single request can't be met
+    assertThat(new UslLimiter(MODEL, Duration.ofNanos(1), 0.99, 3, 1000).limit()).isEqualTo(3);
+
+    // with no coherency costs, R(N) is linear
+    final Model linear = new Model(0.1, 0, 1000);
+    assertThat(new UslLimiter(linear, Duration.ofMillis(10), 0.99, 1, 1000).limit()).isEqualTo(91);
+
+    // as it is with a slightly negative κ
+    final Model negative = new Model(0.1, -1e-9, 1000);
+    assertThat(new UslLimiter(negative, Duration.ofMillis(10), 0.99, 1, 1000).limit())
+        .isEqualTo(91);
+  }
+
+  @Test
+  void rejectsPastTheLimit() {
+    final UslLimiter limiter = new UslLimiter(MODEL, null, 0.99, 1, 3);
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+    assertThat(limiter.inUse()).isEqualTo(3);
+
+    limiter.release();
+    assertThat(limiter.tryAcquire()).isTrue();
+  }
+
+  @Test
+  void unmatchedRelease() {
+    final UslLimiter limiter = new UslLimiter(MODEL, null, 0.99, 1, 3);
+    assertThatThrownBy(limiter::release).isInstanceOf(IllegalStateException.class);
+    assertThat(limiter.inUse()).isZero();
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.release();
+    assertThatThrownBy(limiter::release).isInstanceOf(IllegalStateException.class);
+    assertThat(limiter.inUse()).isZero();
+  }
+
+  @Test
+  void queuesPastTheLimit() throws Exception {
+    final UslLimiter limiter = new UslLimiter(MODEL, null, 0.99, 1, 1);
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.acquire(10, TimeUnit.MILLISECONDS)).isFalse();
+
+    final CompletableFuture<Boolean> waiter =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return limiter.acquire(10, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                throw new AssertionError(e);
+              }
+            });
+    Thread.sleep(50);
+    assertThat(waiter).isNotDone();
+
+    limiter.release();
+    assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(limiter.inUse()).isEqualTo(1);
+  }
+
+  @Test
+  void refreshesTheModel() {
+    final UslLimiter limiter = new UslLimiter(MODEL);
+    assertThat(limiter.refresh()).isFalse();
+
+    // the system has gotten worse, so the limit should come down
+    final Model worse = new Model(0.05, 0.002, 1000);
+    for (int i = 0; i < 1000; i++) {
+      final double n = 1 + (i % 40);
+      final double x = worse.throughputAtConcurrency(n);
+      limiter.update(Measurement.ofConcurrency().andThroughput(n, x));
+    }
+    assertThat(limiter.limit()).isLessThan(30);
+    assertThat(limiter.model().kappa()).isGreaterThan(MODEL.kappa());
+  }
+}
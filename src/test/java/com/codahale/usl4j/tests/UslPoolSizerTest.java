@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2017 Coda Hale (coda.hale@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codahale.usl4j.tests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.usl4j.Model;
+import com.codahale.usl4j.UslPoolSizer;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class UslPoolSizerTest {
+
+  // Nmax = 44, and R(N) = 2ms at N ≈ 29.7
+  private static final Model TRUTH = new Model(0.02, 0.0005, 1000);
+
+  @Test
+  void badArguments() {
+    assertThatThrownBy(() -> new UslPoolSizer(1, 0, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslPoolSizer(11, 1, 10))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslPoolSizer(4, 1, 10, Duration.ZERO, 0.1))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThatThrownBy(() -> new UslPoolSizer(4, 1, 10, null, -1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void probesAndReturnsHome() {
+    final UslPoolSizer sizer = new UslPoolSizer(8, 1, 100);
+    assertThat(sizer.observe(TRUTH.throughputAtConcurrency(8))).isEqualTo(10);
+    assertThat(sizer.observe(TRUTH.throughputAtConcurrency(10))).isEqualTo(8);
+    assertThat(sizer.observe(TRUTH.throughputAtConcurrency(8))).isEqualTo(6);
+    assertThat(sizer.observe(TRUTH.throughputAtConcurrency(6))).isEqualTo(8);
+  }
+
+  @Test
+  void staysWithinBounds() {
+    final UslPoolSizer sizer = new UslPoolSizer(4, 2, 16);
+    for (int i = 0; i < 200; i++) {
+      final int size = sizer.observe(TRUTH.throughputAtConcurrency(sizer.size()));
+      assertThat(size).isBetween(2, 16);
+    }
+    assertThat(sizer.homeSize()).isEqualTo(16);
+  }
+
+  @Test
+  void convergesOnTheThroughputPeak() {
+    for (long seed = 0; seed < 10; seed++) {
+      final UslPoolSizer sizer = new UslPoolSizer(4, 1, 200);
+      assertThat(simulate(sizer, seed)).isLessThanOrEqualTo(4);
+      assertThat(sizer.homeSize()).isBetween(38, 50);
+    }
+  }
+
+  @Test
+  void convergesOnTheLatencyConstrainedOptimum() {
+    for (long seed = 0; seed < 10; seed++) {
+      final UslPoolSizer sizer = new UslPoolSizer(4, 1, 200, Duration.ofMillis(2), 0.1);
+      assertThat(simulate(sizer, seed)).isLessThanOrEqualTo(4);
+      assertThat(sizer.homeSize()).isBetween(26, 33);
+    }
+  }
+
+  @Test
+  void respectsTheSlaWithNoCoherencyCosts() {
+    // with no peak, the pool would keep doubling, but R(N) = 10ms at N = 91
+    final Model linear = new Model(0.1, 0, 1000);
+    for (long seed = 0; seed < 10; seed++) {
+      final UslPoolSizer sizer = new UslPoolSizer(4, 1, 1000, Duration.ofMillis(10), 0.1);
+      simulate(sizer, linear, seed);
+      assertThat(sizer.homeSize()).isBetween(70, 100);
+    }
+  }
+
+  @Test
+  void skipsTheIntervalAfterAResize() throws Exception {
+    // run the measurements by hand, rather than on a schedule
+    final AtomicReference<Runnable> tick = new AtomicReference<>();
+    final ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(1) {
+          @Override
+          public ScheduledFuture<?> scheduleAtFixedRate(
+              Runnable command, long initialDelay, long period, TimeUnit unit) {
+            tick.set(command);
+            return schedule(() -> {}, 1, TimeUnit.DAYS);
+          }
+        };
+    final ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(8, 8, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+    try {
+      for (int i = 0; i < 100_000; i++) {
+        pool.execute(
+            () -> {
+              try {
+                Thread.sleep(1);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+
+      final UslPoolSizer sizer = new UslPoolSizer(8, 1, 100);
+      sizer.schedule(pool, executor, Duration.ofSeconds(1));
+
+      // the first interval is at the home size, so the pool is resized for a probe
+      Thread.sleep(50);
+      tick.get().run();
+      assertThat(pool.getCorePoolSize()).isEqualTo(10);
+
+      // the next interval is spent settling, and isn't attributed to the probe
+      Thread.sleep(50);
+      tick.get().run();
+      assertThat(sizer.size()).isEqualTo(10);
+      assertThat(pool.getCorePoolSize()).isEqualTo(10);
+
+      // the one after that is, and the pool returns home
+      Thread.sleep(50);
+      tick.get().run();
+      assertThat(pool.getCorePoolSize()).isEqualTo(8);
+    } finally {
+      pool.shutdownNow();
+      executor.shutdownNow();
+    }
+  }
+
+  // runs the sizer against the true model with 2% noise, returning the number of times the home
+  // size moved in the second half of the run
+  private static int simulate(UslPoolSizer sizer, long seed) {
+    return simulate(sizer, TRUTH, seed);
+  }
+
+  private static int simulate(UslPoolSizer sizer, Model truth, long seed) {
+    final Random random = new Random(seed);
+    int moves = 0;
+    int home = sizer.homeSize();
+    for (int i = 0; i < 300; i++) {
+      final double x = truth.throughputAtConcurrency(sizer.size());
+      sizer.observe(x * (1 + 0.02 * random.nextGaussian()));
+      if (sizer.homeSize() != home) {
+        home = sizer.homeSize();
+        if (i >= 150) {
+          moves++;
+        }
+      }
+    }
+    return moves;
+  }
+}